@@ -0,0 +1,86 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import android.content.Context;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for re-applying control strip button specs, which will execute on an Android device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ControlStripButtonsTest {
+
+    @Test
+    public void reapplyingSpecsUndoesImperativeChanges() {
+        final Context appContext = InstrumentationRegistry.getTargetContext();
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ControlSheet sheet = new ControlSheet(appContext);
+                List<ButtonSpec> specs = Arrays.asList(new ButtonSpec("settings", R.drawable.ic_settings_18dp),
+                                                       new ButtonSpec("close", R.drawable.ic_close_18dp));
+
+                sheet.setControlStripButtons(specs);
+                ControlStripButton button = sheet.getControlStripButton(0);
+                assertTrue(button.isEnabled());
+
+                sheet.setControlStripButtonEnabled(0, false);
+                assertFalse(button.isEnabled());
+
+                sheet.setControlStripButtons(specs);
+                assertSame(button, sheet.getControlStripButton(0));
+                assertTrue(button.isEnabled());
+            }
+        });
+    }
+
+    @Test
+    public void reapplyingSpecsKeepsSpecChanges() {
+        final Context appContext = InstrumentationRegistry.getTargetContext();
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ControlSheet sheet = new ControlSheet(appContext);
+
+                sheet.setControlStripButtons(Arrays.asList(new ButtonSpec("settings", R.drawable.ic_settings_18dp)));
+                ControlStripButton button = sheet.getControlStripButton(0);
+
+                sheet.setControlStripButtons(Arrays.asList(new ButtonSpec("settings", R.drawable.ic_settings_18dp).setEnabled(false)));
+                assertSame(button, sheet.getControlStripButton(0));
+                assertFalse(button.isEnabled());
+            }
+        });
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.view.View;
+
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * <p>Describes one control strip button, for {@link ControlSheet#setControlStripButtons(java.util.List)}: its drawable,
+ * whether it's enabled, and its click listener. The key tells buttons apart between two calls, so it must stay the same
+ * for the same button, and be unique within the strip.</p>
+ *
+ * <pre>
+ *     new ButtonSpec("search", R.drawable.ic_search).setEnabled(online).setOnClickListener(searchClicks)
+ * </pre>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ButtonSpec {
+
+    private final String key;
+    private final int drawableId;
+    private boolean enabled = true;
+    private View.OnClickListener onClickListener;
+
+    /**
+     * @param key A stable, unique key for the button
+     * @param drawableId The id of the button's drawable
+     */
+    public ButtonSpec(@NonNull String key, @DrawableRes int drawableId) {
+        this.key = key;
+        this.drawableId = drawableId;
+    }
+
+    /**
+     * @param enabled Whether the button is enabled (it is, by default)
+     * @return The {@link ButtonSpec} for method chaining
+     */
+    public ButtonSpec setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    /**
+     * @param onClickListener The button's click listener, can be {@code null}
+     * @return The {@link ButtonSpec} for method chaining
+     */
+    public ButtonSpec setOnClickListener(@Nullable View.OnClickListener onClickListener) {
+        this.onClickListener = onClickListener;
+        return this;
+    }
+
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    public int getDrawableId() {
+        return drawableId;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Nullable
+    public View.OnClickListener getOnClickListener() {
+        return onClickListener;
+    }
+
+    /**
+     * The sheet keeps a copy of what it applied, so a spec changed (and passed in again) later is still told apart
+     *
+     * @return A copy of this spec
+     */
+    ButtonSpec copy() {
+        return new ButtonSpec(key, drawableId).setEnabled(enabled).setOnClickListener(onClickListener);
+    }
+}
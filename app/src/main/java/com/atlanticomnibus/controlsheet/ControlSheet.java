@@ -24,20 +24,30 @@
 package com.atlanticomnibus.controlsheet;
 
 import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.InsetDrawable;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
-import android.view.LayoutInflater;
+import android.view.Gravity;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewOutlineProvider;
 import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -57,12 +67,14 @@ import androidx.core.view.ViewCompat;
 import androidx.viewpager.widget.ViewPager;
 
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
-import com.google.android.material.tabs.TabLayout;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * <p>An easy to use {@code BottomSheet} widget with a predefined {@link ViewPager}, a "control strip"
@@ -103,6 +115,7 @@ import java.util.List;
  *         app:button_animation_style="none|dip|spin"
  *         app:sheet_control_button_style="none|cogwheel|chevron|custom"
  *         app:show_control_strip="true|false"
+ *         app:inflate_on_expand="true|false"
  * </pre>
  *
  * <p>Note that if you set the {@code sheet_control_button_style} to "custom", you can specify drawable IDs
@@ -209,7 +222,7 @@ import java.util.List;
 
 
 @SuppressWarnings("unused")
-public class ControlSheet extends LinearLayout {
+public class ControlSheet extends LinearLayout implements CoordinatorLayout.AttachedBehavior {
 
     private final float DEFAULT_ELEVATION_VALUE = 24.0f, // Of the whole sheet
                         CONTROLSTRIP_ELEVATION;          // Calculated from screen density in constructors
@@ -220,7 +233,15 @@ public class ControlSheet extends LinearLayout {
                       DEFAULT_VIEWPAGER_SIZE_LIMIT         =  5, // Got to be enough. If not, you're doing design wrong. (You cvn raise it anyway)
                       DEFAULT_CONTROL_BUTTON_PADDING_VALUE = 16, // Non-negotiable. :)
                       CONTROL_BUTTON_PADDING,                    // This will eb calculated in the constructors
-                      CONTROLSTRIP_DEFAULT_ELEVATION_VALUE =  2; // Not very high.
+                      CONTROLSTRIP_DEFAULT_ELEVATION_VALUE =  2, // Not very high.
+                      PAGE_INDICATOR_HEIGHT_VALUE          = 16, // The dots under the pager
+                      PAGE_INDICATOR_MARGIN_VALUE          =  8, // And some space under the dots
+                      PAGE_JUMP_DURATION                   = 120, // Each half of a page jump (out, then in)
+                      PAGE_JUMP_SLIDE_VALUE                = 48, // How far pages slide when jumping with JUMP_SLIDE
+                      DEFAULT_PAGE_COST_BUDGET             = 16, // A page should be ready within a frame, in milliseconds
+                      MOTION_ELEVATION_VALUE               =  4; // Shadow of the moving sheet, with reduced-cost motion
+
+    private static final int DEFAULT_SNAPSHOT_BUDGET = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16); // Page snapshots can have this many bytes
 
 
     // These are purposely public, linetr is wrong.
@@ -233,36 +254,262 @@ public class ControlSheet extends LinearLayout {
                             SPIN_BUTTON               =   1, // The button will spin, (and magically change shapes mid-spin, if it1s the control button)
                             DIP_BUTTON                =   2, // The button will have a "dip" effect
                             BUTTON_ANIMATION_DURATION = 300, // Not very fast, but not very slow either. just right
+                            JUMP_AUTO                 =   0, // Scrolls to neighbouring pages, cross-fades to distant ones
+                            JUMP_SMOOTH               =   1, // Scrolls all the way, like the ViewPager would
+                            JUMP_CROSS_FADE           =   2, // Fades out, and fades in on the other page
+                            JUMP_SLIDE                =   3, // Like the cross-fade, with a short slide towards the other page
+                            TRANSITION_NONE           =   0, // Pages just scroll
+                            TRANSITION_DEPTH          =   1, // The page on the right sinks in, the one on the left slides over it
+                            TRANSITION_FADE           =   2, // Pages stay put, and fade into each other
+                            TRANSITION_SLIDE_OVER     =   3, // The incoming page slides over the current one
                             NATURAL                  =    1, // Natural numbering mode, staring from 1
                             ZERO_BASED                =   0; // "Traditional" zero based numbering mode, starting from 0
 
-    private ViewPager viewPager;                        // A pager of views. (Or is it a view of pagers??)
-    private ConstraintLayout controlStripLayout;        // This is the controlstrip itself
+    private ViewPager viewPager;                        // A pager of views. (Or is it a view of pagers??) Created when first needed
+    private ConstraintLayout controlStripLayout;        // This is the controlstrip itself. Created when first needed
+    private PageIndicatorView pageIndicator;            // The dots under the pager. Created when there's more than one page
     private ImageView sheetControlButton;               // The "fixed" button at the end of the strip, which can open/close the sheet
-    private List<Integer> layoutIds;                    // A list of layout ids held by the viewpager
-    private ArrayList<ControlStripButton> stripButtons; // A list of buttons shown on the controlstrip
-
-    private boolean controlStripVisible, // If true, it means the control strip is visible
-                    isDynamic = false;   // If true, the widget was added from code, and no from XML
+    private final ControlSheetModel model = new ControlSheetModel(DEFAULT_VIEWPAGER_SIZE_LIMIT, ZERO_BASED); // Page layout ids, strip button ids, and numbering
+
+    private boolean controlStripVisible,                // If true, it means the control strip is visible
+                    isDynamic = false,                  // If true, the widget was added from code, and no from XML
+                    inflateOnExpand,                    // If true, pages are only inflated when the sheet first starts to move
+                    pagesMaterialized,                  // If true, the pager has its adapter, and the pages (can) exist
+                    lowRamDevice,                       // If true, we're on a low RAM device, and keep as little around as we can
+                    animateSheetHeight,                 // If true, height changes of the pager are animated while the sheet is expanded
+                    pagerFitsCurrentPage,               // If true, the pager is as tall as the current page, not the tallest one
+                    memoryTrimmed,                      // If true, memory ran low, and the pager only keeps the pages next to the current one
+                    reversePageDrawingOrder,            // If true, the page transformer wants the pages drawn in reverse order
+                    reducedCostMotion,                  // If true, the sheet is cheaper to draw while it's moving
+                    inReducedCostMotion,                // If true, the sheet is moving, and is drawn the cheaper way right now
+                    freezePageLayoutWhileMoving,        // If true, layout requests from the pages wait until the sheet stops
+                    pagesPreparing,                     // If true, pages of a new adapter are being prepared, only the neighbours are kept for now
+                    retainPages,                        // If true, pages are kept across configuration changes
+                    sheetOpened,                        // If true, the sheet was opened, and the visit to its current page counted
+                    buttonColorSet,                     // If true, the button colour was given, and not taken from the theme
+                    snapToPage;                         // If true, the sheet expands as far as the current page goes
 
     private float mElevation; // The melevation of the sheet
 
     private int buttonColor,               // It's the colour of the buttons
                 sheetPeekHeight,           // link BottomSheet's peekHeight
                 controlButtonStyle,        // Cogwheel, chevron, or custom (user defined)
-                vpSizeLimit,               // The number of pages the ViewPager can have. Since they need to be held in memory
                 buttonAnimationStyle,      // Spin or dip or none
                 customCollapsedDrawableId, // When controlSheetButton's style is custom, you cna set a your own drawable.
                 customExpandedDrawableId,  // When controlSheetButton's style is custom, you cna set a your own drawable.
-                numberingModeOffset;             // Where to start numbers from
+                pendingPage = -1,                // Page to show as soon as the pager has its adapter
+                pageJumpTarget = -1,             // Page a running jump (see showPage()) will land on
+                snapshotBudget;                  // Memory budget for page snapshots, in bytes
+
+    private long pageCostBudgetNanos; // Pages taking longer than this are reported
 
     private Drawable sheetCollapsedButtonDrawable, // The Drawable from the id above
                      sheetExpandedButtonDrawable;  // The Drawable from the id above
 
+    private PageSnapshotCache snapshotCache;                       // Only there when page snapshots are turned on
+    private ViewPager.PageTransformer pageTransformer;             // Built-in or custom page transitions, if any
+    private PageCostProfiler costProfiler;                         // Only there when a PageCostListener is set
+    private PageUsageHistory usageHistory;                         // Only there when page usage is remembered across launches
+    private SparseArray<View> retainedPages;                       // Pages from before a configuration change, waiting for the adapter
+    private int[] screenIndependentPages;                          // Layouts that may be kept across a rotation too
+    private final NestedScrollTracker nestedScrollTracker = new NestedScrollTracker(); // Leaves the behaviour only the current page's scrolling container to find
+    private final PageSnapPoints pageSnapPoints = new PageSnapPoints(this);             // Moves the behaviour's stops to fit the current page
     private BottomSheetBehavior sheetBehavior;                     // The layout_behaviour of the sheet
-    private ControlSheetInflatedListener inflatedListener;         // Listener to listen to everything being laid out
-    private ControlSheetStateChangedListener stateChangedListener; // Listener to listen to state changes in the BottomSheetBehaviour
 
+    private final ListenerRegistry<ControlSheetInflatedListener> inflatedListeners =               // Listeners to listen to everything being laid out
+            new ListenerRegistry<>(new ControlSheetInflatedListener[0]);
+    private final ListenerRegistry<ControlSheetStateChangedListener> stateChangedListeners =       // Listeners to listen to state changes in the BottomSheetBehaviour
+            new ListenerRegistry<>(new ControlSheetStateChangedListener[0]);
+    private final ListenerRegistry<ControlSheetPageChangedListener> pageChangedListeners =         // Listeners to listen to the pager changing pages
+            new ListenerRegistry<>(new ControlSheetPageChangedListener[0]);
+    private final ListenerRegistry<ControlStripButtonClickListener> stripButtonClickListeners =    // Listeners to listen to any strip button being clicked
+            new ListenerRegistry<>(new ControlStripButtonClickListener[0]);
+    private final ListenerRegistry<ControlSheetSlideListener> slideListeners =                     // Listeners to listen to the sheet moving
+            new ListenerRegistry<>(new ControlSheetSlideListener[0]);
+    private final SlideEventDispatcher slideEvents = new SlideEventDispatcher(slideListeners);   // Hands slide offsets to the listeners once per frame
+    private final SheetMutationQueue mutations = new SheetMutationQueue(this);                  // Changes posted from any thread, applied once per frame
+
+    private final ViewPager.SimpleOnPageChangeListener pagerListener = new ViewPager.SimpleOnPageChangeListener() {
+        @Override
+        public void onPageScrollStateChanged(int state) {           // Keeps the sheet's helpers posted on what the pager is doing
+            if (snapshotCache != null) {
+                snapshotCache.setPagerMoving(state != ViewPager.SCROLL_STATE_IDLE);
+            }
+        }
+
+        @Override
+        public void onPageSelected(int position) {
+            if (nestedScrollTracker.setCurrentPage(position)) {
+                requestLayout(); //The behaviour only finds the new scrolling container when it lays the sheet out
+            }
+            pageSnapPoints.update((WrappingViewPager) viewPager, position, true);
+
+            //Every page change in an open sheet is a visit, moving the sheet around is not
+            if (usageHistory != null && sheetOpened) {
+                usageHistory.recordVisit(model.getLayoutId(position));
+            }
+
+            for (ControlSheetPageChangedListener listener : pageChangedListeners.get()) {
+                listener.onControlSheetPageChanged(model.toPosition(position));
+            }
+        }
+    };
+
+    private final Runnable allPagesPrepared = new Runnable() {
+        @Override
+        public void run() {                                         // The scheduler is done, the pager can have all the pages now
+            if (pagesPreparing) {
+                pagesPreparing = false;
+                applyOffscreenPageLimit();
+            }
+        }
+    };
+
+    private final BottomSheetBehavior.BottomSheetCallback sheetCallback = new BottomSheetBehavior.BottomSheetCallback() {
+        @Override
+        public void onStateChanged(@NonNull View bottomSheet, int newState) {
+
+            for (ControlSheetStateChangedListener listener : stateChangedListeners.get()) {
+                listener.controlSheetStateChanged(newState);
+            }
+
+            if(ControlSheetModel.showsPages(newState)) {
+                //It's moving, so the pages are about to be seen
+                materializePages();
+            }
+
+            if(snapshotCache!=null) {
+                snapshotCache.setSheetMoving(ControlSheetModel.isMoving(newState));
+            }
+
+            if(reducedCostMotion) {
+                setMotionCostReduced(ControlSheetModel.isMoving(newState));
+            }
+
+            if(viewPager!=null) {
+                if (freezePageLayoutWhileMoving) {
+                    ((WrappingViewPager) viewPager).setLayoutFrozen(ControlSheetModel.isMoving(newState));
+                }
+                //Collapsed, only the strip can be seen, the pages don't need to be measured, laid out or drawn
+                ((WrappingViewPager) viewPager).setSuspended(!ControlSheetModel.showsPages(newState));
+            }
+
+            if(usageHistory!=null) {
+                recordUsage(newState);
+            }
+
+            switch (model.onSheetStateChanged(newState)) {
+                case ControlSheetModel.BUTTON_OPEN:
+                    updateSheetControlButton(true);
+                    break;
+                case ControlSheetModel.BUTTON_CLOSE:
+                    updateSheetControlButton(false);
+                    break;
+            }
+        }
+
+        @Override
+        public void onSlide(@NonNull View bottomSheet, float slideOffset) {
+            materializePages();
+            slideEvents.onSlide(slideOffset);
+        }
+    };
+
+    private final View.OnClickListener controlButtonClicks = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {                               // Will open/close the sheet as needed
+            if (sheetBehavior == null) {
+                return;
+            }
+            materializePages();
+            if (sheetBehavior.getState() != BottomSheetBehavior.STATE_EXPANDED) {
+                sheetBehavior.setState(BottomSheetBehavior.STATE_EXPANDED);
+            } else {
+                sheetBehavior.setState(BottomSheetBehavior.STATE_COLLAPSED);
+            }
+        }
+    };
+
+    private final View.OnClickListener stripButtonClicks = new View.OnClickListener() {
+        @Override
+        public void onClick(View button) {                          // Every strip button has this, their own listeners are in a tag
+            Object ownListener = button.getTag(R.id.controlsheet_strip_button_listener);
+            if (ownListener instanceof View.OnClickListener) {
+                ((View.OnClickListener) ownListener).onClick(button);
+            }
+
+            int index = model.indexOfStripButton(button.getId());
+            if (index >= 0) {
+                for (ControlStripButtonClickListener listener : stripButtonClickListeners.get()) {
+                    listener.onControlStripButtonClicked(model.toPosition(index), (ControlStripButton) button);
+                }
+            }
+        }
+    };
+
+    private final SimplePagerAdapter.PageListener pageListener = new SimplePagerAdapter.PageListener() {
+        @Override
+        public void onPageInstantiated(int position, @NonNull View page) { // Keeps the sheet's helpers posted on pages coming and going
+            nestedScrollTracker.onPageInstantiated(position, page);
+        }
+
+        @Override
+        public void onPageDestroyed(int position, @NonNull View page) {
+            nestedScrollTracker.onPageDestroyed(position);
+        }
+    };
+
+    private final WrappingViewPager.HeightAnimationHost heightAnimationHost = new WrappingViewPager.HeightAnimationHost() {
+        @Nullable
+        @Override
+        public View getHeightAnimationTarget() {                    // Only an expanded sheet moves its top when its height changes
+            if (animateSheetHeight && sheetBehavior != null && ViewCompat.isLaidOut(ControlSheet.this)
+                    && sheetBehavior.getState() == BottomSheetBehavior.STATE_EXPANDED) {
+                return ControlSheet.this;
+            }
+            return null;
+        }
+    };
+
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {                       // Registered while attached to a window
+            trimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) { /*Not our business*/ }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+    };
+
+    private final Runnable pageMaterializer = new Runnable() {     // Posted when a touch on the strip hints that the sheet is about to move
+        @Override
+        public void run() {
+            materializePages();
+        }
+    };
+
+    private final MessageQueue.IdleHandler usagePrewarmer = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {                                // Queued on attach, for sheets with a usage history
+            if (usageHistory == null || pagesMaterialized) {
+                return false;
+            }
+            if (!usageHistory.isLoaded()) {
+                //The history is posted to this thread once it's read, so we'll be back
+                return true;
+            }
+            if (hasUsedPages()) {
+                //The sheet is going to be opened, going by the history. Better have the pages ready by then
+                materializePages();
+            }
+            return false;
+        }
+    };
 
 
     /*************************************Some custom annotations**********************************/
@@ -285,6 +532,18 @@ public class ControlSheet extends LinearLayout {
     private @interface ControlButtonAnimationStyle {
     }
 
+    /** @hide **/
+    @IntDef({JUMP_AUTO, JUMP_SMOOTH, JUMP_CROSS_FADE, JUMP_SLIDE})
+    @Retention(RetentionPolicy.SOURCE)
+    private @interface PageJumpMode {
+    }
+
+    /** @hide **/
+    @IntDef({TRANSITION_NONE, TRANSITION_DEPTH, TRANSITION_FADE, TRANSITION_SLIDE_OVER})
+    @Retention(RetentionPolicy.SOURCE)
+    private @interface PageTransition {
+    }
+
     /** @hide **/
     @IntDef({NATURAL, ZERO_BASED})
     @Retention(RetentionPolicy.SOURCE)
@@ -314,14 +573,8 @@ public class ControlSheet extends LinearLayout {
         CONTROLSTRIP_HEIGHT = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_HEIGHT_VALUE, getResources().getDisplayMetrics()));
         CONTROLSTRIP_ELEVATION = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_ELEVATION_VALUE, getResources().getDisplayMetrics());
         CONTROL_BUTTON_PADDING=Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_CONTROL_BUTTON_PADDING_VALUE, getResources().getDisplayMetrics()));
-        mElevation = DEFAULT_ELEVATION_VALUE;
+        applyDefaults();
         isDynamic = true;
-        controlStripVisible = true;
-        sheetPeekHeight = 0;
-        controlButtonStyle = COGWHEEL;
-        vpSizeLimit = DEFAULT_VIEWPAGER_SIZE_LIMIT;
-        buttonAnimationStyle = SPIN_BUTTON;
-        numberingModeOffset = ZERO_BASED;
         initSheet(context);
     }
 
@@ -336,15 +589,11 @@ public class ControlSheet extends LinearLayout {
         CONTROLSTRIP_HEIGHT = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_HEIGHT_VALUE, getResources().getDisplayMetrics()));
         CONTROLSTRIP_ELEVATION = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_ELEVATION_VALUE, getResources().getDisplayMetrics());
         CONTROL_BUTTON_PADDING=Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_CONTROL_BUTTON_PADDING_VALUE, getResources().getDisplayMetrics()));
-        mElevation = DEFAULT_ELEVATION_VALUE;
+        applyDefaults();
         isDynamic = true;
-        controlStripVisible = true;
-        sheetPeekHeight = 0;
-        this.layoutIds = layoutIds;
-        controlButtonStyle = COGWHEEL;
-        vpSizeLimit = DEFAULT_VIEWPAGER_SIZE_LIMIT;
-        buttonAnimationStyle = SPIN_BUTTON;
-        numberingModeOffset = ZERO_BASED;
+        for (int layoutId : layoutIds) {
+            model.appendPage(layoutId);
+        }
         initSheet(context);
     }
 
@@ -355,6 +604,7 @@ public class ControlSheet extends LinearLayout {
         CONTROLSTRIP_HEIGHT = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_HEIGHT_VALUE, getResources().getDisplayMetrics()));
         CONTROLSTRIP_ELEVATION = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_ELEVATION_VALUE, getResources().getDisplayMetrics());
         CONTROL_BUTTON_PADDING=Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_CONTROL_BUTTON_PADDING_VALUE, getResources().getDisplayMetrics()));
+        applyDefaults();
         getAttributes(context, attrs);
         initSheet(context);
     }
@@ -364,6 +614,7 @@ public class ControlSheet extends LinearLayout {
         CONTROLSTRIP_HEIGHT = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_HEIGHT_VALUE, getResources().getDisplayMetrics()));
         CONTROLSTRIP_ELEVATION = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_ELEVATION_VALUE, getResources().getDisplayMetrics());
         CONTROL_BUTTON_PADDING=Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_CONTROL_BUTTON_PADDING_VALUE, getResources().getDisplayMetrics()));
+        applyDefaults();
         getAttributes(context, attrs);
         initSheet(context);
     }
@@ -374,10 +625,51 @@ public class ControlSheet extends LinearLayout {
         CONTROLSTRIP_HEIGHT = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_HEIGHT_VALUE, getResources().getDisplayMetrics()));
         CONTROLSTRIP_ELEVATION = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CONTROLSTRIP_DEFAULT_ELEVATION_VALUE, getResources().getDisplayMetrics());
         CONTROL_BUTTON_PADDING=Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_CONTROL_BUTTON_PADDING_VALUE, getResources().getDisplayMetrics()));
+        applyDefaults();
         getAttributes(context, attrs);
         initSheet(context);
     }
 
+    /**
+     * <p>Puts every setting that has a setter back to its default. Called by every constructor (before the XML attributes
+     * are read), and by {@link ControlSheet#resetForReuse()}, so a pooled sheet starts out exactly like a new one.</p>
+     *
+     * <p>Only fields are set here, the views are brought in line by the callers.</p>
+     */
+    private void applyDefaults() {
+        mElevation = DEFAULT_ELEVATION_VALUE;
+        controlStripVisible = true;
+        sheetPeekHeight = 0;
+        controlButtonStyle = COGWHEEL;
+        buttonAnimationStyle = SPIN_BUTTON;
+        customCollapsedDrawableId = 0;
+        customExpandedDrawableId = 0;
+        buttonColor = Color.TRANSPARENT;
+        buttonColorSet = false;
+
+        model.setNumberingOffset(ZERO_BASED);
+        model.setPageLimit(DEFAULT_VIEWPAGER_SIZE_LIMIT);
+        inflateOnExpand = false;
+        pagerFitsCurrentPage = false;
+        animateSheetHeight = false;
+        snapToPage = false;
+        reducedCostMotion = false;
+        freezePageLayoutWhileMoving = true;
+        retainPages = false;
+        screenIndependentPages = null;
+        snapshotBudget = defaultSnapshotBudget();
+        pageCostBudgetNanos = DEFAULT_PAGE_COST_BUDGET * 1000000L;
+        pageTransformer = null;
+        reversePageDrawingOrder = false;
+    }
+
+    /**
+     * @return The default memory budget for page snapshots, a quarter of it on low RAM devices
+     */
+    private int defaultSnapshotBudget() {
+        return lowRamDevice ? DEFAULT_SNAPSHOT_BUDGET / 4 : DEFAULT_SNAPSHOT_BUDGET;
+    }
+
     /**
      * Reads da attributez from the XML
      * @param context the context
@@ -385,7 +677,7 @@ public class ControlSheet extends LinearLayout {
      */
     private void getAttributes(Context context, AttributeSet attrs) {
 
-        numberingModeOffset = ZERO_BASED; //This is currently not settable from XML, because it concerns code, really
+        //Numbering mode is not settable from XML, because it concerns code, really
 
         TypedArray a = context.getTheme().obtainStyledAttributes(
                 attrs,
@@ -400,20 +692,24 @@ public class ControlSheet extends LinearLayout {
             String idsString = a.getString(R.styleable.ControlSheet_layout_ids);
             if (!TextUtils.isEmpty(idsString)) {
                 //noinspection ConstantConditions
-                layoutIds = resolveIds(idsString);
+                for (int layoutId : resolveIds(idsString)) {
+                    model.appendPage(layoutId);
+                }
             }
 
             int defaultButtonColor;
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                defaultButtonColor=resolveButtonColor();
+                defaultButtonColor=resolveThemeButtonColor();
             } else {
                 defaultButtonColor=Color.BLACK;
             }
 
+            buttonColorSet = a.hasValue(R.styleable.ControlSheet_button_color);
             buttonColor=a.getColor(R.styleable.ControlSheet_button_color, defaultButtonColor);
             controlButtonStyle = a.getInt(R.styleable.ControlSheet_sheet_control_button_style, COGWHEEL);
-            vpSizeLimit = a.getInt(R.styleable.ControlSheet_viewpager_max_pages, DEFAULT_VIEWPAGER_SIZE_LIMIT);
+            model.setPageLimit(a.getInt(R.styleable.ControlSheet_viewpager_max_pages, DEFAULT_VIEWPAGER_SIZE_LIMIT));
+            inflateOnExpand = a.getBoolean(R.styleable.ControlSheet_inflate_on_expand, false);
             buttonAnimationStyle = a.getInt(R.styleable.ControlSheet_button_animation_style, SPIN_BUTTON);
             customCollapsedDrawableId = a.getResourceId(R.styleable.ControlSheet_sheet_collapsed_button_drawable_id, 0);
             customExpandedDrawableId = a.getResourceId(R.styleable.ControlSheet_sheet_expanded_button_drawable_id, 0);
@@ -425,15 +721,20 @@ public class ControlSheet extends LinearLayout {
     }
 
     /**
-     * Inflates the sheet when all is done
+     * <p>Finishes setting up the sheet when all is done.</p>
+     *
+     * <p>There is nothing to inflate here, the control strip, the {@link ViewPager} and the page indicator are all
+     * built in code, and only when they are first needed (see {@link ControlSheet#ensureControlStrip()},
+     * {@link ControlSheet#ensureViewPager()} and {@link ControlSheet#ensurePageIndicator()})</p>
      *
      * @param context The Context
      */
     private void initSheet(Context context) {
 
-        LayoutInflater inflater = (LayoutInflater) context
-                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        inflater.inflate(R.layout.control_sheet, this, true);
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        lowRamDevice = activityManager != null && activityManager.isLowRamDevice();
+
+        snapshotBudget = defaultSnapshotBudget();
 
         if (this.isDynamic) {
             onFinishInflate();
@@ -453,97 +754,74 @@ public class ControlSheet extends LinearLayout {
         super.onFinishInflate();
 
         setOrientation(LinearLayout.VERTICAL);
-        setBackgroundColor(Color.WHITE);
+        applySheetBackground();
         setElevationInternal(mElevation);
 
         if(isDynamic) {
-            buttonColor = resolveButtonColor();
+            buttonColor = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? resolveThemeButtonColor() : Color.BLACK;
         }
 
-        viewPager = findViewById(R.id.viewpager_config_selector);
-        viewPager.setOffscreenPageLimit(vpSizeLimit-1);
-        controlStripLayout = findViewById(R.id.control_strip_layout);
-
         setUpSheetControlButton();
         setUpViewPager();
 
-        /**
-         * Really can't do much before layout is lay'd out and everything is attached properly
-         */
-        getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-            @Override
-            public void onGlobalLayout() {
-
-                getViewTreeObserver().removeOnGlobalLayoutListener(this);
-
-                if (getParent() instanceof CoordinatorLayout) {
-
-                    sheetBehavior = BottomSheetBehavior.from(ControlSheet.this);
-
-                    setUpControlStrip();
-                    setControlStripConstraints();
-
-                    sheetBehavior.setHideable(false);
-                    sheetBehavior.setBottomSheetCallback(new BottomSheetBehavior.BottomSheetCallback() {
-                        @SuppressLint("SwitchIntDef")
-                        @Override
-                        public void onStateChanged(@NonNull View bottomSheet, int newState) {
-
-                            if(stateChangedListener!=null) {
-                                stateChangedListener.controlSheetStateChanged(newState);
-                            }
-
-                            switch (newState) {
-                                case BottomSheetBehavior.STATE_SETTLING: {
-                                    if (sheetControlButton.getTag() != "open") {
-                                        updateSheetControlButton(true);
-                                        sheetControlButton.setTag("open");
-                                    } else {
-                                        updateSheetControlButton(false);
-                                        sheetControlButton.setTag("closed");
-                                    }
-                                    break;
-                                }
-                                case BottomSheetBehavior.STATE_EXPANDED: {
-                                    //in case it ws dragged open all the way and never entered "settling" state
-                                    if (sheetControlButton.getTag() != "open") {
-                                        updateSheetControlButton(true);
-                                        sheetControlButton.setTag("open");
-                                    }
-                                    break;
-                                }
-                                case BottomSheetBehavior.STATE_COLLAPSED: {
-                                    //in case it ws dragged closed all the way and never entered "settling" state
-                                    if (sheetControlButton.getTag() != "closed") {
-                                        updateSheetControlButton(false);
-                                        sheetControlButton.setTag("closed");
-                                    }
-                                    break;
-                                }
-                            }
-                        }
+        //The behaviour and the strip are set up in onAttachedToWindow(), before the first measure
+    }
 
-                        @Override
-                        public void onSlide(@NonNull View bottomSheet, float slideOffset) { /*This does noting*/ }
-                    });
-
-                    sheetControlButton.setOnClickListener(new View.OnClickListener() {
-                        @Override
-                        public void onClick(View v) {
-                            //Will open/close the sheet as needed
-                            if (sheetBehavior.getState() != BottomSheetBehavior.STATE_EXPANDED) {
-                                sheetBehavior.setState(BottomSheetBehavior.STATE_EXPANDED);
-                            } else {
-                                sheetBehavior.setState(BottomSheetBehavior.STATE_COLLAPSED);
-                            }
-                        }
-                    });
+    /**
+     * <p>Lets a {@link CoordinatorLayout} give the sheet a {@link BottomSheetBehavior} on its own, so
+     * {@code app:layout_behavior} is optional. A behaviour set in XML or on the layout params still wins.</p>
+     *
+     * @return The sheet's {@link BottomSheetBehavior}
+     */
+    @NonNull
+    @Override
+    public CoordinatorLayout.Behavior getBehavior() {
+        if (sheetBehavior == null) {
+            sheetBehavior = new BottomSheetBehavior<ControlSheet>();
+        }
+        return sheetBehavior;
+    }
 
-                } else {
-                    Log.e("ControlStrip", "Sheet is not attached to a CoordinatorLayout!");
-                }
+    /**
+     * Once the sheet is in a {@link CoordinatorLayout}, this grabs its {@link BottomSheetBehavior} (or gives it one), and
+     * sets up everything that depends on it. Runs when the sheet is attached to the window, which is before its first
+     * measure, so peek height and strip constraints are all in place for the first layout
+     */
+    private void attachSheetBehavior() {
+
+        if (getParent() instanceof CoordinatorLayout) {
+
+            CoordinatorLayout.LayoutParams params = (CoordinatorLayout.LayoutParams) getLayoutParams();
+            if (params.getBehavior() == null) {
+                params.setBehavior(getBehavior());
             }
-        });
+            sheetBehavior = BottomSheetBehavior.from(ControlSheet.this);
+
+            setUpControlStrip();
+            if (controlStripLayout != null) {
+                setControlStripConstraints();
+            }
+
+            sheetBehavior.setHideable(false);
+            if (snapToPage) {
+                pageSnapPoints.attach(sheetBehavior);
+            }
+
+            if (viewPager != null) {
+                nestedScrollTracker.setCurrentPage(viewPager.getCurrentItem());
+                ((WrappingViewPager) viewPager).setSuspended(!ControlSheetModel.showsPages(sheetBehavior.getState()));
+            }
+
+            if (sheetBehavior.getState() != BottomSheetBehavior.STATE_COLLAPSED) {
+                //E.g. restored in an expanded state, the pages should not wait any longer
+                materializePages();
+            }
+            //The same callback every time, so the app's own callbacks stay, and a re-attach doesn't add it twice
+            sheetBehavior.addBottomSheetCallback(sheetCallback);
+
+        } else {
+            Log.e("ControlStrip", "Sheet is not attached to a CoordinatorLayout!");
+        }
     }
 
 
@@ -563,10 +841,118 @@ public class ControlSheet extends LinearLayout {
      * @return A {@link ControlSheet} object for method chaining
      */
     public ControlSheet setNumberingMode(@NumberingMode int mode){
-        numberingModeOffset = mode;
+        model.setNumberingOffset(mode);
         return this;
     }
 
+    /**
+     * <p>Turn inflate-on-expand mode on or off. When it's on, and the sheet is collapsed, the {@link ViewPager}'s pages
+     * will not be inflated until the sheet first starts to move (dragged, settling, expanded from code or with the
+     * control button). Putting a finger on the control strip will also get things going, since that usually means
+     * the sheet is about to be opened.</p>
+     *
+     * <p>Note: This has to be set before the layouts are set, otherwise the pages will already be there. Also, the
+     * {@link ControlSheetInflatedListener} will only be called once the pages are actually inflated</p>
+     *
+     * @param inflateOnExpand Whether the pages should wait for the sheet to move
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setInflateOnExpand(boolean inflateOnExpand){
+        this.inflateOnExpand=inflateOnExpand;
+
+        if(!inflateOnExpand) {
+            materializePages();
+        }
+        return this;
+    }
+
+    /**
+     * Returns whether inflate-on-expand mode is on
+     * @return {@code true} if the pages wait for the sheet to move before being inflated
+     */
+    public boolean isInflateOnExpand(){
+        return inflateOnExpand;
+    }
+
+    /**
+     * When the sheet is waiting to inflate its pages, a touch on the control strip starts inflating them, right after
+     * the touch itself has been handled. It will never intercept anything.
+     *
+     * @param ev The {@link MotionEvent}
+     * @return whatever {@link LinearLayout} would return
+     */
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (!pagesMaterialized && inflateOnExpand && controlStripVisible
+                && controlStripLayout != null && ev.getActionMasked() == MotionEvent.ACTION_DOWN && ev.getY() <= controlStripLayout.getBottom()) {
+            removeCallbacks(pageMaterializer);
+            post(pageMaterializer);
+        }
+        return super.onInterceptTouchEvent(ev);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getContext().getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+        attachSheetBehavior();
+
+        if (retainPages) {
+            takeRetainedPages();
+        }
+
+        if (usageHistory != null && !pagesMaterialized && inflateOnExpand) {
+            Looper.myQueue().addIdleHandler(usagePrewarmer);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        //Before the behaviour offsets the sheet, so it already uses the new stops
+        pageSnapPoints.update((WrappingViewPager) viewPager, viewPager == null ? 0 : viewPager.getCurrentItem(), false);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getContext().getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+        if (sheetBehavior != null) {
+            sheetBehavior.removeBottomSheetCallback(sheetCallback);
+        }
+        slideEvents.cancel();
+        pageSnapPoints.cancel();
+        Looper.myQueue().removeIdleHandler(usagePrewarmer);
+        if (usageHistory != null) {
+            usageHistory.flush();
+        }
+        if (retainPages && PageRetainer.isChangingConfigurations(getContext())) {
+            retainCurrentPages();
+        }
+
+        //The behaviour won't tell us when it stops moving, once we're gone
+        setMotionCostReduced(false);
+        if (viewPager != null) {
+            ((WrappingViewPager) viewPager).setLayoutFrozen(false);
+            ((WrappingViewPager) viewPager).setSuspended(false);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * When the sheet is visible again after memory was trimmed, the pager can have all its pages back (unless we're
+     * on a low RAM device anyway)
+     *
+     * @param visibility the new visibility of the window
+     */
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == View.VISIBLE && memoryTrimmed) {
+            memoryTrimmed = false;
+            applyOffscreenPageLimit();
+        }
+    }
+
     /**
      * Does what it says.
      *
@@ -598,6 +984,9 @@ public class ControlSheet extends LinearLayout {
      * @see ValidControlSheetState
      */
     public void setControlSheetState(@ValidControlSheetState int state){
+        if(state!=BottomSheetBehavior.STATE_COLLAPSED){
+            materializePages();
+        }
         sheetBehavior.setState(state);
     }
 
@@ -656,9 +1045,85 @@ public class ControlSheet extends LinearLayout {
     }
 
 
+    /**
+     * <p>Turn reduced-cost motion on or off. When it's on, while the sheet is being dragged or is settling, it's drawn
+     * the cheap way: its shadow is smaller (and the strip's is gone), the whole sheet is on a hardware layer, so moving it
+     * is only a matter of compositing, and changes in page content are not drawn until the sheet stops. Everything is
+     * back to full fidelity as soon as it settles.</p>
+     *
+     * <p>Mostly useful on low-end devices, or with busy pages</p>
+     *
+     * @param reducedCostMotion Whether the moving sheet should be drawn the cheap way
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setReducedCostMotion(boolean reducedCostMotion){
+        this.reducedCostMotion = reducedCostMotion;
+        if (!reducedCostMotion) {
+            setMotionCostReduced(false);
+        }
+        return this;
+    }
+
+
+    /**
+     * <p>While the sheet is being dragged or is settling, layout requests from the pages (live data, images loading, etc.)
+     * are held back, and the sheet is laid out once, after it stopped, instead of mid-animation. This is on by default, turn
+     * it off if pages absolutely must change their layout while the sheet moves.</p>
+     *
+     * @param freeze Whether page layout should wait for the sheet to stop
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setFreezePageLayoutWhileMoving(boolean freeze){
+        freezePageLayoutWhileMoving = freeze;
+        if (!freeze && viewPager != null) {
+            ((WrappingViewPager) viewPager).setLayoutFrozen(false);
+        }
+        return this;
+    }
+
+
     /*************************Control Sheet controlling stuff (private)******************************/
 
 
+    /**
+     * Switches between the cheap and the full fidelity way of drawing the sheet, see
+     * {@link ControlSheet#setReducedCostMotion(boolean)}
+     *
+     * @param reduced Whether to draw the cheap way
+     */
+    private void setMotionCostReduced(boolean reduced){
+        if (reduced == inReducedCostMotion) {
+            return;
+        }
+        inReducedCostMotion = reduced;
+
+        float elevation = reduced ? Math.min(mElevation, TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, MOTION_ELEVATION_VALUE, getResources().getDisplayMetrics())) : mElevation;
+        ViewCompat.setElevation(this, elevation);
+        if (controlStripLayout != null) {
+            ViewCompat.setElevation(controlStripLayout, reduced ? 0 : CONTROLSTRIP_ELEVATION);
+        }
+
+        setLayerType(reduced ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE, null);
+
+        if (viewPager != null) {
+            ((WrappingViewPager) viewPager).setInvalidationsSuppressed(reduced);
+        }
+    }
+
+    /**
+     * <p>Gives the sheet a background that starts under the control strip, since the strip has its own. That way nothing is
+     * filled white twice. The shadow is still cast by the whole sheet, thanks to the outline provider</p>
+     */
+    private void applySheetBackground(){
+        int stripHeight = controlStripVisible && controlStripLayout != null ? CONTROLSTRIP_HEIGHT : 0;
+        setBackground(new InsetDrawable(new ColorDrawable(Color.WHITE), 0, stripHeight, 0, 0));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            setOutlineProvider(ViewOutlineProvider.BOUNDS);
+        }
+    }
+
+
     /**
      * Internal method to set the sheet1s elevation in a version agnostic manner
      *
@@ -697,8 +1162,8 @@ public class ControlSheet extends LinearLayout {
      * @return A {@link ControlSheet} object for method chaining
      */
     public ControlSheet setPagerMaxSize(int maxSize){
-        vpSizeLimit=maxSize;
-        viewPager.setOffscreenPageLimit(vpSizeLimit-1);
+        model.setPageLimit(maxSize);
+        applyOffscreenPageLimit();
         return setUpViewPager();
     }
 
@@ -709,12 +1174,8 @@ public class ControlSheet extends LinearLayout {
      * @return A {@link ControlSheet} object for method chaining
      */
     public ControlSheet setSheetPagerLayouts(int[] layoutIds){
-        if(this.layoutIds==null){
-            this.layoutIds=new ArrayList<>();
-        }
-
         for(int i:layoutIds) {
-            this.layoutIds.add(i);
+            model.appendPage(i);
         }
 
         return setUpViewPager();
@@ -757,11 +1218,16 @@ public class ControlSheet extends LinearLayout {
     }
 
     /**
-     * Return a {@link List<Integer>} of all the layout ids currently set to the {@link ViewPager>}
+     * Return a {@link List<Integer>} of all the layout ids currently set to the {@link ViewPager>}. The list is a copy,
+     * changing it will not change the pages
      * @return a {@link List<Integer>} of all the layout ids currently set to the {@link ViewPager>}
      */
     public List<Integer> getSheetPageLayoutIds(){
-        return layoutIds;
+        List<Integer> result = new ArrayList<>(model.getPageCount());
+        for (int i = 0; i < model.getPageCount(); i++) {
+            result.add(model.getLayoutId(i));
+        }
+        return result;
     }
 
     /**
@@ -774,21 +1240,84 @@ public class ControlSheet extends LinearLayout {
      * @return The id of the layout in the specified position, or 0 if the position is not valid
      */
     public int getSheetPagerLayoutIdAtPosition(@IntRange(from=0) int position){
-        if(position<=vpSizeLimit) {
-            return layoutIds.get(position - numberingModeOffset);
+        if(model.isPagePosition(position)) {
+            return model.getLayoutId(model.toIndex(position));
         } else {
-            Log.e("ControlSheet", "getSheetPagerLayoutIdAtPosition(): 'position' exceeds maximum number of pages (Currently: " + vpSizeLimit + ")");
+            Log.e("ControlSheet", "getSheetPagerLayoutIdAtPosition(): There is no page in position " + position + " (Currently: " + model.getPageCount() + " pages)");
             return 0;
         }
     }
 
     /**
-     * Returns the {@link ViewPager} itself for direct manipulation
+     * <p>Returns the {@link ViewPager} itself for direct manipulation</p>
+     *
+     * <p>Note: The pager is normally only created when there are pages to show, but calling this will create it</p>
      *
      * @return the {@link ViewPager} itself for direct manipulation
      */
     public ViewPager getViewPager(){
-        return viewPager;
+        return ensureViewPager();
+    }
+
+    /**
+     * <p>Shows the page in the specified position. Unlike {@link ViewPager#setCurrentItem(int, boolean)}, this does not
+     * scroll through (and create) every page between the current and the target one. Only the target page is inflated and
+     * laid out, while the current one fades out.</p>
+     *
+     * <p>If the pages are not set up yet (see {@link ControlSheet#setInflateOnExpand(boolean)}), the page will be the
+     * current one when they are.</p>
+     *
+     * <p>Note: The numbering starts from 0 by default, but this can be changed to start form 1,
+     * corresponding to the layout's visual position, by using {@link ControlSheet#setNumberingMode(int)} </p>
+     *
+     * @param position The position of the page to show (starting form 0 or 1, depending on the setup)
+     * @param mode {@link ControlSheet#JUMP_AUTO}, {@link ControlSheet#JUMP_SMOOTH}, {@link ControlSheet#JUMP_CROSS_FADE} or {@link ControlSheet#JUMP_SLIDE}
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet showPage(@IntRange(from=0) int position, @PageJumpMode int mode){
+        int target = model.toIndex(position);
+
+        if (!model.isPagePosition(position)) {
+            Log.e("ControlSheet", "showPage(): 'position' is not a valid page position");
+            return this;
+        }
+
+        if (viewPager == null || viewPager.getAdapter() == null) {
+            pendingPage = target;
+            return this;
+        }
+
+        if (pageJumpTarget >= 0) {
+            pageJumpTarget = target; // A jump is already running, it will just land somewhere else
+            return this;
+        }
+
+        int distance = Math.abs(target - viewPager.getCurrentItem());
+
+        if (distance == 0) {
+            return this;
+        } else if (!viewPager.isShown() || !ViewCompat.isLaidOut(viewPager)) {
+            viewPager.setCurrentItem(target, false); // Nobody's watching
+        } else if (mode == JUMP_SMOOTH || (mode == JUMP_AUTO && distance == 1)) {
+            viewPager.setCurrentItem(target, true);
+        } else {
+            jumpToPage(target, mode == JUMP_SLIDE);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the position of the current page of the {@link ViewPager}, or the page that will be current when it's set up
+     *
+     * @return The position of the current page (starting form 0 or 1, depending on the setup)
+     */
+    public int getCurrentPage(){
+        if (pageJumpTarget >= 0) {
+            return model.toPosition(pageJumpTarget);
+        } else if (viewPager == null || viewPager.getAdapter() == null) {
+            return model.toPosition(Math.max(0, pendingPage));
+        }
+        return model.toPosition(viewPager.getCurrentItem());
     }
 
 
@@ -801,9 +1330,14 @@ public class ControlSheet extends LinearLayout {
 
         List<Object> result= new ArrayList<>();
 
+        if (viewPager == null) {
+            return result;
+        }
+
         for (int pageNumber=0; pageNumber<viewPager.getChildCount(); pageNumber++) {
-            for (int i = 0; i < ((ViewGroup) viewPager.getChildAt(pageNumber)).getChildCount(); i++) {
-                result.add(((ViewGroup) viewPager.getChildAt(pageNumber)).getChildAt(i));
+            ViewGroup page = PageFrame.unwrap(viewPager.getChildAt(pageNumber));
+            for (int i = 0; i < page.getChildCount(); i++) {
+                result.add(page.getChildAt(i));
             }
         }
 
@@ -820,14 +1354,303 @@ public class ControlSheet extends LinearLayout {
 
         List<Object> result= new ArrayList<>();
 
-        for (int i = 0; i < ((ViewGroup) viewPager.getChildAt(pageNumber)).getChildCount(); i++) {
-            result.add(((ViewGroup) viewPager.getChildAt(pageNumber)).getChildAt(i));
+        if (viewPager == null) {
+            return result;
+        }
+
+        ViewGroup page = PageFrame.unwrap(viewPager.getChildAt(pageNumber));
+        for (int i = 0; i < page.getChildCount(); i++) {
+            result.add(page.getChildAt(i));
         }
 
         return result;
     }
 
 
+    /**
+     * <p>Turn page snapshots on or off. When on, while the pager is being swiped, or the sheet is being dragged or is
+     * settling, pages are drawn from cached bitmaps instead of their live views. The live pages are back as soon as
+     * everything is idle. Useful for complex pages, which are costly to draw.</p>
+     *
+     * <p>Snapshots are taken while the main thread is idle, and are refreshed when the page content changes (a page that
+     * changes mid-swipe will show its last snapshot until the swipe ends). They are kept within a memory budget,
+     * see {@link ControlSheet#setPageSnapshotBudget(int)}</p>
+     *
+     * <p>Note: Pages are wrapped in a container in this mode, so if they already exist, they will be re-inflated</p>
+     *
+     * @param enabled Whether pages should be drawn from snapshots while moving
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageSnapshotsEnabled(boolean enabled){
+        if (enabled == (snapshotCache != null)) {
+            return this;
+        }
+
+        if (enabled) {
+            snapshotCache = new PageSnapshotCache(snapshotBudget);
+        } else {
+            snapshotCache.clear();
+            snapshotCache = null;
+        }
+
+        rebuildPages();
+        return this;
+    }
+
+    /**
+     * Sets the memory budget for page snapshots in bytes. When it's exceeded, the least recently used snapshots are dropped,
+     * and those pages will simply draw live. The default is 1/16th of the app's maximum heap.
+     *
+     * @param budgetBytes The budget in bytes
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageSnapshotBudget(@IntRange(from=1) int budgetBytes){
+        snapshotBudget = budgetBytes;
+        if (snapshotCache != null) {
+            snapshotCache.setBudget(budgetBytes);
+        }
+        return this;
+    }
+
+
+    /**
+     * <p>Profiles the pages: times the inflation, and the first measure, layout and draw passes of every page, and tells the
+     * listener about the ones that took longer than the budget (see {@link ControlSheet#setPageCostBudget(float)}).
+     * Handy to find the slow page among many, without a profiler session.</p>
+     *
+     * <p>Note: Pages are wrapped in a container to be timed, so if they already exist, they will be re-inflated (and
+     * profiled)</p>
+     *
+     * @param listener The listener, or {@code null} to stop profiling
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageCostListener(@Nullable PageCostListener listener){
+        if (listener == null) {
+            costProfiler = null;
+            if (viewPager != null && viewPager.getAdapter() != null) {
+                ((SimplePagerAdapter) viewPager.getAdapter()).setCostProfiler(null);
+            }
+        } else if (costProfiler != null) {
+            costProfiler.setListener(listener);
+        } else {
+            costProfiler = new PageCostProfiler(model, listener, pageCostBudgetNanos);
+            rebuildPages();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the time a page may take to inflate, measure, lay out and draw for the first time, before the
+     * {@link PageCostListener} hears about it. The default is 16 milliseconds, about a frame
+     *
+     * @param budgetMillis The budget in milliseconds
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageCostBudget(@FloatRange(from=0) float budgetMillis){
+        pageCostBudgetNanos = (long) (budgetMillis * 1000000);
+        if (costProfiler != null) {
+            costProfiler.setBudgetNanos(pageCostBudgetNanos);
+        }
+        return this;
+    }
+
+    /**
+     * <p>Returns what the page in the specified position cost, the last time it was created, if a
+     * {@link PageCostListener} is set</p>
+     *
+     * <p>Note: The numbering starts from 0 by default, but this can be changed to start form 1,
+     * corresponding to the layout's visual position, by using {@link ControlSheet#setNumberingMode(int)} </p>
+     *
+     * @param position The position of the page (starting form 0 or 1, depending on the setup)
+     * @return The {@link PageCost}, or {@code null} if it's not known
+     */
+    @Nullable
+    public PageCost getPageCost(@IntRange(from=0) int position){
+        if (costProfiler == null || !model.isPagePosition(position)) {
+            return null;
+        }
+        return costProfiler.getCost(model.getLayoutId(model.toIndex(position)));
+    }
+
+
+    /**
+     * <p>Makes the {@link ViewPager} (and so the sheet) as tall as the current page, instead of the tallest one. Pages of
+     * different heights will then change the sheet's height as they become current. See also
+     * {@link ControlSheet#setAnimateSheetHeight(boolean)}</p>
+     *
+     * @param fitCurrentPage Whether the pager should fit the current page
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPagerFitsCurrentPage(boolean fitCurrentPage){
+        pagerFitsCurrentPage = fitCurrentPage;
+        if (viewPager != null) {
+            ((WrappingViewPager) viewPager).setFitCurrentPage(fitCurrentPage && !snapToPage);
+        }
+        return this;
+    }
+
+    /**
+     * <p>Animate height changes of the expanded sheet (a new current page with a different height, or page content changing
+     * size), instead of letting it jump.</p>
+     *
+     * <p>Page heights are cached, and the sheet is slid by its translation, so there is no layout on every frame of the
+     * animation, only a single one, at the start when growing, or at the end when shrinking.</p>
+     *
+     * @param animate Whether to animate height changes
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setAnimateSheetHeight(boolean animate){
+        animateSheetHeight = animate;
+        return this;
+    }
+
+    /**
+     * <p>Makes the sheet expand only as far as the current page goes, instead of all the way up to the tallest page's height.
+     * The half expanded stop is then halfway up the current page. A short page opens a short sheet, and the sheet has less
+     * to move and less to draw.</p>
+     *
+     * <p>Unlike {@link ControlSheet#setPagerFitsCurrentPage(boolean)} (which it overrides), the sheet is never laid out
+     * again when the page changes. The pager stays as tall as its tallest page, the behaviour's stops are moved to fit the
+     * cached height of the current page, and an expanded sheet simply slides to its new stop.</p>
+     *
+     * @param snap Whether the sheet's stops should fit the current page
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setSnapToPage(boolean snap){
+        if (snapToPage == snap) {
+            return this;
+        }
+        snapToPage = snap;
+
+        if (viewPager != null) {
+            ((WrappingViewPager) viewPager).setFitCurrentPage(pagerFitsCurrentPage && !snap);
+        }
+
+        if (!snap) {
+            pageSnapPoints.detach();
+        } else if (sheetBehavior != null) {
+            pageSnapPoints.attach(sheetBehavior);
+        }
+        requestLayout();
+        return this;
+    }
+
+    /**
+     * <p>Remembers which pages are looked at, how often and how lately, across app launches (in {@link android.content.SharedPreferences},
+     * under the given id). The most used pages are then prepared ahead of the others, and the rarely used ones last, in the
+     * spare time of later frames (the pager keeps all of them once they're there, as usual). If the sheet inflates its pages on expand, and the history says it does get opened, the
+     * pages are set up as soon as the main thread is idle after launch, instead of when it's first dragged.</p>
+     *
+     * <p>Use a different id for every sheet with different pages, pages are told apart by their layout's name.</p>
+     *
+     * @param sheetId The id to keep this sheet's history under, or {@code null} to stop keeping it
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageUsageHistory(@Nullable String sheetId){
+        if (usageHistory != null) {
+            if (usageHistory.getSheetId().equals(sheetId)) {
+                return this;
+            }
+            usageHistory.flush();
+        }
+        //Starts reading the stored history right away, in the background
+        usageHistory = sheetId == null ? null : new PageUsageHistory(getContext(), sheetId);
+        sheetOpened = false;
+
+        if (viewPager != null) {
+            ((WrappingViewPager) viewPager).getPreparationScheduler().setUsageHistory(usageHistory);
+        }
+        return this;
+    }
+
+    /**
+     * <p>Keeps the inflated pages across configuration changes (e.g. rotation), instead of inflating them all again. The
+     * recreated sheet takes the pages over, with their state, as long as the change can't have affected them: the change
+     * is only about the keyboard or navigation, and the layouts don't have variants for it. A change of the screen's size or
+     * orientation only keeps the pages declared with {@link ControlSheet#setScreenIndependentPages(int...)}. Otherwise
+     * the pages are inflated again, as usual.</p>
+     *
+     * <p>Needs to be set before the sheet is attached (e.g. in {@code onCreate()}), the sheet needs an id, and the activity
+     * a {@link androidx.lifecycle.ViewModelStore} (any {@code AppCompatActivity} has one). Pages are inflated on a context that
+     * is moved over to the new activity, but anything the app set on the views (e.g. click listeners) is kept too, so set
+     * those again in {@link ControlSheetInflatedListener#onControlSheetInflated(ViewPager)}. The views also keep the
+     * resources they were built with: nothing on them is resolved again for the new configuration. Pages of a sheet with
+     * page snapshots or a {@link PageCostListener} are not kept.</p>
+     *
+     * @param retain Whether pages should be kept across configuration changes
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setRetainPages(boolean retain){
+        retainPages = retain;
+        if (!retain) {
+            retainedPages = null;
+        }
+        if (viewPager != null && viewPager.getAdapter() instanceof SimplePagerAdapter) {
+            ((SimplePagerAdapter) viewPager.getAdapter()).setRetainable(retain);
+        }
+        return this;
+    }
+
+    /**
+     * Declares pages that may be kept (see {@link ControlSheet#setRetainPages(boolean)}) when the screen's size or orientation
+     * changes too. Only list layouts that look the same on every screen: besides the layout itself, none of the dimensions,
+     * strings, styles or drawables they use may have variants like {@code values-land}, as the views won't pick them up.
+     *
+     * @param layoutIds The screen independent layouts, or none to keep no pages across a rotation (the default)
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setScreenIndependentPages(int... layoutIds){
+        screenIndependentPages = layoutIds == null || layoutIds.length == 0 ? null : layoutIds.clone();
+        return this;
+    }
+
+
+    /**
+     * <p>Sets one of the built-in page transitions: {@link ControlSheet#TRANSITION_DEPTH}, {@link ControlSheet#TRANSITION_FADE},
+     * {@link ControlSheet#TRANSITION_SLIDE_OVER}, or {@link ControlSheet#TRANSITION_NONE} for plain scrolling.</p>
+     *
+     * <p>The transitions only animate alpha, translation and scale, and the pages are on hardware layers while they are being
+     * swiped, so complex pages are not redrawn on every frame.</p>
+     *
+     * @param transition The transition style
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageTransition(@PageTransition int transition){
+        if (transition == TRANSITION_NONE) {
+            return setPageTransformer(false, null);
+        }
+
+        PageTransitionTransformer transformer = new PageTransitionTransformer(transition);
+        return setPageTransformer(transformer.isReverseDrawingOrder(), transformer);
+    }
+
+    /**
+     * <p>Sets a custom {@link ViewPager.PageTransformer}. Use this instead of setting it on {@link ControlSheet#getViewPager()}
+     * directly: the pages will be put on hardware layers when a swipe starts, and taken off when the pager goes idle.</p>
+     *
+     * <p>To make the layers worth it, the transformer should only change render-thread properties (alpha, translation, scale,
+     * rotation). Anything that changes what the page draws, or its layout, will redraw the layer on every frame.</p>
+     *
+     * @param reverseDrawingOrder Whether pages should be drawn from last to first
+     * @param transformer The transformer, or {@code null} to remove the current one
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setPageTransformer(boolean reverseDrawingOrder, @Nullable ViewPager.PageTransformer transformer){
+        pageTransformer = transformer;
+        reversePageDrawingOrder = reverseDrawingOrder;
+
+        if (viewPager != null) {
+            if (transformer == null) {
+                for (int i = 0; i < viewPager.getChildCount(); i++) {
+                    PageTransitionTransformer.reset(viewPager.getChildAt(i)); // The pager leaves them wherever the last one put them
+                }
+            }
+            viewPager.setPageTransformer(reverseDrawingOrder, transformer, View.LAYER_TYPE_HARDWARE);
+        }
+        return this;
+    }
+
+
     /**********************************ViewPager stuff (private)***********************************/
 
 
@@ -837,38 +1660,291 @@ public class ControlSheet extends LinearLayout {
      * @return A {@link ControlSheet} object for method chaining
      */
     private ControlSheet setUpViewPager() {
-        if (layoutIds != null && layoutIds.size() > 0) {
+        if (model.getPageCount() > 0) {
+
+            if (model.trimPagesToLimit()) {
+                Log.e("ControlSheet", "Too many pages, only the first " + model.getPageLimit() + " are kept");
+            }
+
+            if (!pagesMaterialized) {
+                if (inflateOnExpand && (sheetBehavior == null || sheetBehavior.getState() == BottomSheetBehavior.STATE_COLLAPSED)) {
+                    //Nobody can see the pages yet, they will be set up when the sheet starts moving
+                    if (pageIndicator != null) {
+                        pageIndicator.setVisibility(View.GONE);
+                    }
+                    return this;
+                }
+                pagesMaterialized = true;
+            }
+
+            ensureViewPager();
+
+            if (viewPager.getAdapter() == null) {
+                SimplePagerAdapter adapter = new SimplePagerAdapter(getContext(), model);
+                adapter.setSnapshotCache(snapshotCache);
+                adapter.setCostProfiler(costProfiler);
+                adapter.setPageListener(pageListener);
+                adapter.setRetainable(retainPages);
+                adapter.setRetainedPages(retainedPages);
+                retainedPages = null;
+                nestedScrollTracker.reset(pendingPage >= 0 ? pendingPage : viewPager.getCurrentItem());
+                viewPager.setAdapter(adapter);
+                preparePagesGradually();
+                if (pendingPage >= 0 && pendingPage < adapter.getCount()) {
+                    viewPager.setCurrentItem(pendingPage, false); // Before the first layout, so nothing in between gets created
+                }
+                pendingPage = -1;
+                viewPager.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+                    @Override
+                    public void onGlobalLayout() {
+                        getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                        for (ControlSheetInflatedListener listener : inflatedListeners.get()) {
+                            listener.onControlSheetInflated(viewPager);
+                        }
+                    }
+                });
+            } else {
+                viewPager.getAdapter().notifyDataSetChanged();
+                //The tracker's positions may point at other pages now, and so may the behaviour's scrolling container
+                nestedScrollTracker.rescan(viewPager, viewPager.getCurrentItem());
+                requestLayout();
+            }
+
+            if (viewPager.getAdapter().getCount() > 1) {
+                ensurePageIndicator().setVisibility(View.VISIBLE);
+                pageIndicator.attachToViewPager(viewPager);
+            } else if (pageIndicator != null) {
+                pageIndicator.setVisibility(View.GONE);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Throws away the pages and creates them again, on the same current page. For changes in how pages are created
+     */
+    private void rebuildPages(){
+        if (viewPager != null && viewPager.getAdapter() != null) {
+            pendingPage = viewPager.getCurrentItem();
+            viewPager.setAdapter(null);
+            setUpViewPager();
+        }
+    }
+
+    /**
+     * Creates the {@link WrappingViewPager} if it does not exist yet, and puts it right under the control strip
+     *
+     * @return The (possibly brand new) {@link ViewPager}
+     */
+    private ViewPager ensureViewPager(){
+        if (viewPager == null) {
+            WrappingViewPager wrappingViewPager = new WrappingViewPager(getContext());
+            wrappingViewPager.setHeightAnimationHost(heightAnimationHost);
+            wrappingViewPager.setFitCurrentPage(pagerFitsCurrentPage && !snapToPage);
+            wrappingViewPager.getPreparationScheduler().setUsageHistory(usageHistory);
+            //Only takes effect after the first layout, so the sheet still knows how tall it will be when expanded
+            wrappingViewPager.setSuspended(sheetBehavior != null && !ControlSheetModel.showsPages(sheetBehavior.getState()));
+            viewPager = wrappingViewPager;
+            viewPager.setId(R.id.viewpager_config_selector);
+            viewPager.setScrollContainer(true);
+            viewPager.setVerticalScrollbarPosition(View.SCROLLBAR_POSITION_RIGHT);
+            applyOffscreenPageLimit();
+            viewPager.addOnPageChangeListener(pagerListener);
+            if (pageTransformer != null) {
+                viewPager.setPageTransformer(reversePageDrawingOrder, pageTransformer, View.LAYER_TYPE_HARDWARE);
+            }
+
+            int index = controlStripLayout == null ? 0 : indexOfChild(controlStripLayout) + 1;
+            addView(viewPager, index, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT, 1.0f));
+        }
+        return viewPager;
+    }
+
+    /**
+     * Creates the page indicator if it does not exist yet, and puts it at the bottom of the sheet
+     *
+     * @return The (possibly brand new) page indicator
+     */
+    private PageIndicatorView ensurePageIndicator(){
+        if (pageIndicator == null) {
+            pageIndicator = new PageIndicatorView(getContext());
+            pageIndicator.setId(R.id.config_selector_tablayout);
+            pageSnapPoints.setIndicator(pageIndicator);
+
+            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT,
+                    Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, PAGE_INDICATOR_HEIGHT_VALUE, getResources().getDisplayMetrics())));
+            params.bottomMargin = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, PAGE_INDICATOR_MARGIN_VALUE, getResources().getDisplayMetrics()));
+            params.gravity = Gravity.BOTTOM | Gravity.CENTER;
+
+            addView(pageIndicator, params);
+        }
+        return pageIndicator;
+    }
+
+    /**
+     * <p>Sets how many pages the {@link ViewPager} keeps alive on either side of the current one. Normally that's all of them
+     * (see {@link ControlSheet#setPagerMaxSize(int)}), but on low RAM devices, or when memory ran low, only the neighbours
+     * of the current page are kept. Dropped pages have their state saved by the adapter, and restored when they come back</p>
+     *
+     * <p>With a new adapter, the pager also starts with just the neighbours, while the rest of the pages are prepared in
+     * the spare time of the next frames. The limit is only raised once they are all there, so the pager doesn't have to
+     * create them all in its first layout. With a usage history, the most used pages are prepared first, and the rarely
+     * used ones last, but once they're all there, the pager keeps them like any other.</p>
+     */
+    private void applyOffscreenPageLimit(){
+        if (viewPager != null) {
+            viewPager.setOffscreenPageLimit(lowRamDevice || memoryTrimmed || pagesPreparing ? 1 : Math.max(1, model.getPageLimit() - 1));
+        }
+    }
+
+    /**
+     * Starts preparing the pages of a brand new adapter, frame by frame, see {@link ControlSheet#applyOffscreenPageLimit()}
+     */
+    private void preparePagesGradually(){
+        pagesPreparing = false;
+        if (lowRamDevice || memoryTrimmed || model.getPageCount() <= 2) {
+            return;
+        }
+
+        //The scheduler takes the most used pages first (from the usage history, if there is one), the rarely used ones last
+        PagePreparationScheduler scheduler = ((WrappingViewPager) viewPager).getPreparationScheduler();
+
+        pagesPreparing = true;
+        applyOffscreenPageLimit();
+        scheduler.setOnAllPrepared(allPagesPrepared);
+        scheduler.prepareAll();
+    }
+
+    /**
+     * @return Whether the usage history says any of the pages was ever used
+     */
+    private boolean hasUsedPages(){
+        for (int index = 0; index < model.getPageCount(); index++) {
+            if (usageHistory.getScore(model.getLayoutId(index)) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts a visit to the current page when the sheet opens (going from half to fully expanded is not another visit),
+     * and writes the history out when it's closed
+     *
+     * @param newState The sheet's new state
+     */
+    private void recordUsage(int newState){
+        if (newState == BottomSheetBehavior.STATE_EXPANDED || newState == BottomSheetBehavior.STATE_HALF_EXPANDED) {
+            if (sheetOpened) {
+                return;
+            }
+            sheetOpened = true;
+            if (viewPager != null && viewPager.getAdapter() != null && model.getPageCount() > viewPager.getCurrentItem()) {
+                usageHistory.recordVisit(model.getLayoutId(viewPager.getCurrentItem()));
+            }
+        } else if (newState == BottomSheetBehavior.STATE_COLLAPSED) {
+            sheetOpened = false;
+            usageHistory.flush();
+        }
+    }
+
+    /**
+     * Hands the pages over to the activity's {@link PageRetainer}, for the sheet that will replace this one after the
+     * configuration change
+     */
+    private void retainCurrentPages(){
+        if (viewPager == null || !(viewPager.getAdapter() instanceof SimplePagerAdapter)) {
+            return;
+        }
+        if (getId() == View.NO_ID) {
+            Log.e("ControlSheet", "Pages can only be retained for a sheet with an id");
+            return;
+        }
+
+        PageRetainer retainer = PageRetainer.of(getContext());
+        if (retainer != null) {
+            //Pages that weren't current have their scrolling containers turned off, the next sheet's tracker must find them
+            nestedScrollTracker.reset(viewPager.getCurrentItem());
+            retainer.retain(getId(), getContext(), ((SimplePagerAdapter) viewPager.getAdapter()).collectPages(viewPager));
+        }
+    }
+
+    /**
+     * Takes the pages left by the sheet this one replaces, if there are any, and they're still good
+     */
+    private void takeRetainedPages(){
+        PageRetainer retainer = getId() == View.NO_ID ? null : PageRetainer.of(getContext());
+        SparseArray<View> pages = retainer == null ? null : retainer.take(getId(), getContext(), screenIndependentPages);
+
+        if (pages != null) {
+            if (viewPager != null && viewPager.getAdapter() instanceof SimplePagerAdapter) {
+                ((SimplePagerAdapter) viewPager.getAdapter()).setRetainedPages(pages);
+            } else {
+                retainedPages = pages;
+            }
+        }
+    }
+
+    /**
+     * Reacts to memory pressure: snapshots go first, then the offscreen pages, if things get critical (or we're in the background)
+     *
+     * @param level The level from {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    private void trimMemory(int level){
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && snapshotCache != null) {
+            snapshotCache.clear();
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL && !memoryTrimmed) {
+            memoryTrimmed = true;
+            applyOffscreenPageLimit();
+        }
+    }
+
+    /**
+     * <p>Jumps straight to a page: the pager fades out (sliding a bit, if asked to), switches pages without scrolling, then
+     * fades back in. The target page is prepared while the current one is fading, and only alpha and translation are
+     * animated on a hardware layer, so the frames are cheap.</p>
+     *
+     * @param target The position of the target page (zero based)
+     * @param slide Whether to add a short slide towards the target
+     */
+    private void jumpToPage(int target, boolean slide){
+        pageJumpTarget = target;
+        ((SimplePagerAdapter) viewPager.getAdapter()).preparePage(viewPager, target);
+
+        final float distance = slide ? Math.signum(target - viewPager.getCurrentItem())
+                * TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, PAGE_JUMP_SLIDE_VALUE, getResources().getDisplayMetrics()) : 0;
 
-            if (layoutIds.size() > vpSizeLimit) {
-                layoutIds = layoutIds.subList(0, vpSizeLimit - 1);
-            }
+        viewPager.animate().alpha(0f).translationX(-distance).setDuration(PAGE_JUMP_DURATION).withLayer().withEndAction(new Runnable() {
+            @Override
+            public void run() {
+                SimplePagerAdapter adapter = (SimplePagerAdapter) viewPager.getAdapter();
+                if (adapter != null && pageJumpTarget < adapter.getCount()) {
+                    adapter.preparePage(viewPager, pageJumpTarget); // In case it changed mid-jump
+                    viewPager.setCurrentItem(pageJumpTarget, false);
+                    adapter.discardPreparedPages();
+                }
+                pageJumpTarget = -1;
 
-            if (viewPager.getAdapter() == null) {
-                viewPager.setAdapter(new SimplePagerAdapter(getContext(), layoutIds));
-                viewPager.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-                    @Override
-                    public void onGlobalLayout() {
-                        getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                        if (inflatedListener != null) {
-                            inflatedListener.onControlSheetInflated(viewPager);
-                        }
-                    }
-                });
-            } else {
-                viewPager.getAdapter().notifyDataSetChanged();
+                viewPager.setTranslationX(distance);
+                viewPager.animate().alpha(1f).translationX(0f).setDuration(PAGE_JUMP_DURATION).withLayer();
             }
+        });
+    }
 
-            TabLayout tablayout = findViewById(R.id.config_selector_tablayout);
+    /**
+     * When inflate-on-expand is used, this will finally give the adapter to the {@link ViewPager}, the first time the pages
+     * are about to be seen. Does nothing if it has already happened.
+     */
+    private void materializePages(){
+        removeCallbacks(pageMaterializer);
 
-            if (viewPager.getAdapter().getCount() > 1) {
-                tablayout.setVisibility(View.VISIBLE);
-                tablayout.setupWithViewPager(viewPager, true);
-            } else {
-                tablayout.setVisibility(View.GONE);
-            }
+        if(!pagesMaterialized) {
+            pagesMaterialized = true;
+            setUpViewPager();
         }
-
-        return this;
     }
 
     /**
@@ -886,27 +1962,22 @@ public class ControlSheet extends LinearLayout {
      */
     private ControlSheet handlePagerLayouts(int id, int position, boolean removing){
 
-        if(this.layoutIds==null){
-            this.layoutIds=new ArrayList<>();
-        }
-
         if(removing){
-            if(position>0 && position<=layoutIds.size()) {
-                layoutIds.remove(position-numberingModeOffset);
-                if(viewPager.getCurrentItem()==position-numberingModeOffset && position>1){
-                    viewPager.setCurrentItem(position-numberingModeOffset-1, true);
+            int index = model.toIndex(position);
+            if(model.removePage(position)) {
+                if(viewPager==null){
+                    return setUpViewPager();
+                }
+                if(viewPager.getCurrentItem()==index && index>0){
+                    viewPager.setCurrentItem(index-1, true);
                 }
                 viewPager.setAdapter(null);
             }
         } else {
-            if(layoutIds.size()>=vpSizeLimit){
-                Log.e("ControlSheet", "Maximum number of pages reached (Currently: " + vpSizeLimit + ")");
-            } else {
-                if (position > 0) {
-                    layoutIds.add(position - numberingModeOffset, id);
-                } else {
-                    layoutIds.add(id);
-                }
+            if(model.getPageCount()>=model.getPageLimit()){
+                Log.e("ControlSheet", "Maximum number of pages reached (Currently: " + model.getPageLimit() + ")");
+            } else if(!model.addPage(id, position)) {
+                Log.e("ControlSheet", "Can't add a page to position " + position + " (Currently: " + model.getPageCount() + " pages)");
             }
         }
 
@@ -984,7 +2055,7 @@ public class ControlSheet extends LinearLayout {
         this.controlButtonStyle=controlButtonStyle;
         setUpSheetControlButton();
 
-        if(stripButtons!=null && stripButtons.size()>0) {
+        if(model.getStripButtonCount()>0) {
             return setControlStripConstraints();
         }
 
@@ -1049,7 +2120,13 @@ public class ControlSheet extends LinearLayout {
      */
     public ControlSheet setHasControlStrip(boolean visible){
         controlStripVisible=visible;
-        return setUpControlStrip();
+        setUpControlStrip();
+
+        if (controlStripVisible && controlStripLayout != null && sheetBehavior != null) {
+            //The strip may have just been created, so it needs its buttons
+            return setControlStripConstraints();
+        }
+        return this;
     }
 
     /**
@@ -1079,8 +2156,8 @@ public class ControlSheet extends LinearLayout {
      * @return A {@link ControlSheet} object for method chaining
      */
     public ControlSheet setControlStripButtonEnabled(@IntRange(from=0) int position, boolean isEnabled){
-        if (position < controlStripLayout.getChildCount()) {
-            controlStripLayout.findViewById(stripButtons.get(position - numberingModeOffset).getId()).setEnabled(isEnabled);
+        if (model.isStripButtonPosition(position)) {
+            controlStripLayout.findViewById(model.getStripButtonId(position)).setEnabled(isEnabled);
         } else {
             Log.e("ControlStrip", "You ain't got that many buttons either!");
         }
@@ -1098,8 +2175,8 @@ public class ControlSheet extends LinearLayout {
      * @return A {@link ControlStripButton} object
      */
     public ControlStripButton getControlStripButton(@IntRange(from=0) int position){
-        if (position < controlStripLayout.getChildCount()) {
-            return controlStripLayout.findViewById(stripButtons.get(position - numberingModeOffset).getId());
+        if (model.isStripButtonPosition(position)) {
+            return controlStripLayout.findViewById(model.getStripButtonId(position));
         } else {
             Log.e("ControlStrip", "You ain't got that many buttons either!");
             return null;
@@ -1116,8 +2193,8 @@ public class ControlSheet extends LinearLayout {
      * @return boolean of the button's "enabledness"
      */
     public boolean controlStripButtonIsEnabled(@IntRange(from = 0) int position){
-        if (position < controlStripLayout.getChildCount()) {
-            return controlStripLayout.findViewById(stripButtons.get(position - numberingModeOffset).getId()).isEnabled();
+        if (model.isStripButtonPosition(position)) {
+            return controlStripLayout.findViewById(model.getStripButtonId(position)).isEnabled();
         } else {
             Log.e("ControlStrip", "You ain't got that many buttons either!");
             return false;
@@ -1134,8 +2211,8 @@ public class ControlSheet extends LinearLayout {
      * @return {@link Drawable} that is set on  the button
      */
     public Drawable getControlStripButtonDrawable(@IntRange(from = 0) int position){
-        if (position < controlStripLayout.getChildCount()) {
-            return stripButtons.get(position - numberingModeOffset).getDrawable();
+        if (model.isStripButtonPosition(position)) {
+            return ((ControlStripButton) controlStripLayout.findViewById(model.getStripButtonId(position))).getDrawable();
         } else {
             Log.e("ControlStrip", "You ain't got that many buttons either!");
             return null;
@@ -1151,9 +2228,8 @@ public class ControlSheet extends LinearLayout {
      * @param position of the button to remove (starting form 0 or 1, depending on the setup)
      */
     public ControlSheet removeControlStripButton(@IntRange(from = 0) int position){
-        if (position < controlStripLayout.getChildCount()) {
-            controlStripLayout.removeView(controlStripLayout.findViewById(stripButtons.get(position - numberingModeOffset).getId()));
-            stripButtons.remove(position - numberingModeOffset);
+        if (model.isStripButtonPosition(position)) {
+            controlStripLayout.removeView(controlStripLayout.findViewById(model.removeStripButton(position)));
             return setControlStripConstraints();
         } else {
             Log.e("ControlStrip", "You ain't got that many buttons either!");
@@ -1163,6 +2239,74 @@ public class ControlSheet extends LinearLayout {
     }
 
 
+    /**
+     * <p>Sets all the control strip buttons at once, from a list of {@link ButtonSpec}s, in order. It can be called as often
+     * as the buttons change (e.g. with every change in the app's state), only what's different is touched.</p>
+     *
+     * <p>Buttons are matched to the ones already there by their key. New keys get new buttons, missing keys have their buttons
+     * removed, and buttons that stay only get a new drawable, enabled state or click listener if that changed. The strip's
+     * constraints are only set again if buttons came, went or moved, and the strip is laid out at most once.</p>
+     *
+     * <p>Note: This replaces every button, including the ones added with {@link ControlSheet#addControlStripButton(int, View.OnClickListener)}.</p>
+     *
+     * @param specs The buttons, in order
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet setControlStripButtons(@NonNull List<ButtonSpec> specs){
+        ensureControlStrip();
+
+        //What's there now, by key. Buttons without a key were added one by one, they don't make it
+        HashMap<String, ControlStripButton> current = new HashMap<>();
+        for (int i = 0; i < model.getStripButtonCount(); i++) {
+            View button = controlStripLayout.getViewById(model.getStripButtonIdAt(i));
+            Object applied = button == null ? null : button.getTag(R.id.controlsheet_strip_button_spec);
+            if (applied instanceof ButtonSpec) {
+                current.put(((ButtonSpec) applied).getKey(), (ControlStripButton) button);
+            } else if (button != null) {
+                controlStripLayout.removeView(button);
+            }
+        }
+
+        int[] ids = new int[specs.size()];
+        int count = 0;
+        boolean structureChanged = current.size() != model.getStripButtonCount();
+
+        for (ButtonSpec spec : specs) {
+            ControlStripButton button = current.remove(spec.getKey());
+
+            if (button == null) {
+                if (indexOfKey(ids, count, spec.getKey()) >= 0) {
+                    Log.e("ControlStrip", "Duplicate button key \"" + spec.getKey() + "\", only the first one is kept");
+                    continue;
+                }
+                button = createControlStripButton(spec.getDrawableId(), spec.getOnClickListener());
+                button.setEnabled(spec.isEnabled());
+                controlStripLayout.addView(button);
+                structureChanged = true;
+            } else {
+                rebindControlStripButton(button, spec);
+            }
+            button.setTag(R.id.controlsheet_strip_button_spec, spec.copy());
+
+            structureChanged |= count >= model.getStripButtonCount() || model.getStripButtonIdAt(count) != button.getId();
+            ids[count++] = button.getId();
+        }
+
+        for (ControlStripButton leftOver : current.values()) {
+            controlStripLayout.removeView(leftOver);
+            structureChanged = true;
+        }
+
+        if (structureChanged) {
+            model.clearStripButtons();
+            for (int i = 0; i < count; i++) {
+                model.addStripButton(ids[i]);
+            }
+            setControlStripConstraints();
+        }
+        return this;
+    }
+
     /**
      * Set a custom color to the controlstrip's buttons
      *
@@ -1171,6 +2315,7 @@ public class ControlSheet extends LinearLayout {
      */
     public ControlSheet setControlStripButtonsColor(@ColorInt int color){
         buttonColor=color;
+        buttonColorSet=true;
         return updateButtonColors();
     }
 
@@ -1178,6 +2323,25 @@ public class ControlSheet extends LinearLayout {
     /**********************ControlStrip stuff (private)*********************************************/
 
 
+    /**
+     * Creates the control strip if it does not exist yet, and puts it at the top of the sheet
+     *
+     * @return The (possibly brand new) control strip
+     */
+    private ConstraintLayout ensureControlStrip(){
+        if (controlStripLayout == null) {
+            controlStripLayout = new ConstraintLayout(getContext());
+            controlStripLayout.setId(R.id.control_strip_layout);
+            controlStripLayout.setBackgroundColor(Color.WHITE);
+            controlStripLayout.setVisibility(controlStripVisible ? View.VISIBLE : View.GONE);
+
+            addView(controlStripLayout, 0, new LinearLayout.LayoutParams(LayoutParams.MATCH_PARENT, CONTROLSTRIP_HEIGHT));
+            applySheetBackground();
+        }
+        return controlStripLayout;
+    }
+
+
     /**
      * Internal method to update every button's colour
      *
@@ -1189,15 +2353,15 @@ public class ControlSheet extends LinearLayout {
             if (sheetControlButton.getDrawable() != null) {
                 sheetControlButton.getDrawable().setTint(buttonColor);
             }
-            for (ControlStripButton button : stripButtons) {
-                button.getDrawable().setTint(buttonColor);
+            for (int i = 0; i < model.getStripButtonCount(); i++) {
+                ((ControlStripButton) controlStripLayout.findViewById(model.getStripButtonIdAt(i))).getDrawable().setTint(buttonColor);
             }
         } else {
             if (sheetControlButton.getDrawable() != null) {
                 sheetControlButton.getDrawable().setColorFilter(buttonColor, PorterDuff.Mode.MULTIPLY);
             }
-            for (ControlStripButton button : stripButtons) {
-                button.getDrawable().setColorFilter(buttonColor, PorterDuff.Mode.MULTIPLY);
+            for (int i = 0; i < model.getStripButtonCount(); i++) {
+                ((ControlStripButton) controlStripLayout.findViewById(model.getStripButtonIdAt(i))).getDrawable().setColorFilter(buttonColor, PorterDuff.Mode.MULTIPLY);
             }
         }
 
@@ -1205,31 +2369,27 @@ public class ControlSheet extends LinearLayout {
     }
 
     /**
-     * An attempt to resolve he theme's primary colour to set to the buttons, if not other colour is
-     * specified. Defaults to black if primary colour cannot be resolved for any reason.
+     * An attempt to resolve he theme's primary colour to set to the buttons, for when no other colour is
+     * specified. Defaults to black if primary colour cannot be resolved for any reason. It only looks at the
+     * theme, whatever the current button colour is.
      *
      * @return The resolved {@link androidx.annotation.ColorInt}
      */
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    private int resolveButtonColor() {
-
-        if (buttonColor == Color.TRANSPARENT) {
-            TypedValue outValue = new TypedValue();
-            Resources.Theme theme = getContext().getTheme();
-            boolean wasResolved =
-                    theme.resolveAttribute(
-                            android.R.attr.colorPrimary, outValue, true);
-            if (wasResolved) {
-                return outValue.resourceId == 0
-                        ? outValue.data
-                        : ContextCompat.getColor(
-                        getContext(), outValue.resourceId);
-            } else {
-                // fallback colour handling
-                return getResources().getColor(android.R.color.black);
-            }
+    private int resolveThemeButtonColor() {
+        TypedValue outValue = new TypedValue();
+        Resources.Theme theme = getContext().getTheme();
+        boolean wasResolved =
+                theme.resolveAttribute(
+                        android.R.attr.colorPrimary, outValue, true);
+        if (wasResolved) {
+            return outValue.resourceId == 0
+                    ? outValue.data
+                    : ContextCompat.getColor(
+                    getContext(), outValue.resourceId);
         } else {
-            return buttonColor;
+            // fallback colour handling
+            return getResources().getColor(android.R.color.black);
         }
     }
 
@@ -1243,7 +2403,7 @@ public class ControlSheet extends LinearLayout {
         if(getParent() instanceof CoordinatorLayout) {
 
             if (controlStripVisible) {
-                controlStripLayout.setVisibility(View.VISIBLE);
+                ensureControlStrip().setVisibility(View.VISIBLE);
 
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                     controlStripLayout.setElevation(CONTROLSTRIP_ELEVATION);
@@ -1252,9 +2412,12 @@ public class ControlSheet extends LinearLayout {
                 }
                 sheetBehavior.setPeekHeight(CONTROLSTRIP_HEIGHT + sheetPeekHeight);
             } else {
-                controlStripLayout.setVisibility(View.GONE);
+                if (controlStripLayout != null) {
+                    controlStripLayout.setVisibility(View.GONE);
+                }
                 sheetBehavior.setPeekHeight(sheetPeekHeight);
             }
+            applySheetBackground();
         } else {
             Log.e("ControlStrip", "Sheet is not attached to a CoordinatorLayout!");
         }
@@ -1284,6 +2447,7 @@ public class ControlSheet extends LinearLayout {
             sheetControlButton=new ImageView(getContext());
             sheetControlButton.setPadding(CONTROL_BUTTON_PADDING,CONTROL_BUTTON_PADDING,CONTROL_BUTTON_PADDING, CONTROL_BUTTON_PADDING);
             sheetControlButton.setId(generateViewId());
+            sheetControlButton.setOnClickListener(controlButtonClicks);
 
             ConstraintLayout.LayoutParams params = new ConstraintLayout.LayoutParams(ConstraintLayout.LayoutParams.WRAP_CONTENT, CONTROLSTRIP_HEIGHT);
             sheetControlButton.setLayoutParams(params);
@@ -1390,15 +2554,85 @@ public class ControlSheet extends LinearLayout {
     @SuppressWarnings("UnusedReturnValue")
     private ControlSheet attachControlStripButton(final int drawableId, @Nullable final View.OnClickListener onClickListener){
 
+        ControlStripButton button = createControlStripButton(drawableId, onClickListener);
+
+        model.addStripButton(button.getId());
+        ensureControlStrip().addView(button);
+
+        return this;
+    }
+
+    /**
+     * Brings a button in line with its spec, touching only what differs. The button itself is compared, not the last spec,
+     * since the button can be changed in between (e.g. {@link ControlSheet#setControlStripButtonEnabled(int, boolean)})
+     *
+     * @param button The button
+     * @param spec Its new spec
+     */
+    private void rebindControlStripButton(ControlStripButton button, ButtonSpec spec){
+        Object drawableId = button.getTag(R.id.controlsheet_strip_button_drawable);
+
+        if (!(drawableId instanceof Integer) || (Integer) drawableId != spec.getDrawableId()) {
+            button.setImageDrawable(loadButtonDrawable(spec.getDrawableId()));
+            button.setTag(R.id.controlsheet_strip_button_drawable, spec.getDrawableId());
+        }
+        if (button.isEnabled() != spec.isEnabled()) {
+            button.setEnabled(spec.isEnabled());
+        }
+        if (button.getTag(R.id.controlsheet_strip_button_listener) != spec.getOnClickListener()) {
+            button.setTag(R.id.controlsheet_strip_button_listener, spec.getOnClickListener());
+        }
+    }
+
+    /**
+     * Looks for a key among the buttons picked so far
+     *
+     * @param ids The ids of the buttons picked so far
+     * @param count How many there are
+     * @param key The key to look for
+     * @return Its index, or -1
+     */
+    private int indexOfKey(int[] ids, int count, String key){
+        for (int i = 0; i < count; i++) {
+            Object applied = controlStripLayout.getViewById(ids[i]).getTag(R.id.controlsheet_strip_button_spec);
+            if (applied instanceof ButtonSpec && ((ButtonSpec) applied).getKey().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a strip button, with its drawable, but does not add it anywhere
+     *
+     * @param drawableId the id of the button's drawable
+     * @param onClickListener {@link View.OnClickListener} to set on the button (can be null)
+     * @return The new button
+     */
+    private ControlStripButton createControlStripButton(int drawableId, @Nullable View.OnClickListener onClickListener){
+
         ControlStripButton button = new ControlStripButton(getContext(),
                 CONTROL_BUTTON_PADDING,
                 buttonAnimationStyle,
-                onClickListener)
+                stripButtonClicks)
                 .setId(generateViewId(), true);
+        button.setTag(R.id.controlsheet_strip_button_listener, onClickListener);
 
         ConstraintLayout.LayoutParams params = new ConstraintLayout.LayoutParams(ConstraintLayout.LayoutParams.WRAP_CONTENT, CONTROLSTRIP_HEIGHT);
         button.setLayoutParams(params);
 
+        button.setImageDrawable(loadButtonDrawable(drawableId));
+        button.setTag(R.id.controlsheet_strip_button_drawable, drawableId);
+        return button;
+    }
+
+    /**
+     * Loads a drawable for a strip button, tinted with the button colour
+     *
+     * @param drawableId The id of the drawable
+     * @return The tinted drawable
+     */
+    private Drawable loadButtonDrawable(int drawableId){
         Drawable buttonDrawable;
 
         if(Build.VERSION.SDK_INT>=Build.VERSION_CODES.LOLLIPOP) {
@@ -1412,17 +2646,7 @@ public class ControlSheet extends LinearLayout {
         }else {
             buttonDrawable.setColorFilter(buttonColor, PorterDuff.Mode.MULTIPLY);
         }
-
-        button.setImageDrawable(buttonDrawable);
-
-        if(stripButtons==null){
-            stripButtons=new ArrayList<>();
-        }
-
-        stripButtons.add(button);
-        controlStripLayout.addView(button);
-
-        return this;
+        return buttonDrawable;
     }
 
     /**
@@ -1433,7 +2657,7 @@ public class ControlSheet extends LinearLayout {
      */
     private ControlSheet setControlStripConstraints(){
 
-        if(controlStripLayout.findViewById(sheetControlButton.getId())==null) {
+        if(ensureControlStrip().findViewById(sheetControlButton.getId())==null) {
             controlStripLayout.addView(sheetControlButton);
         }
 
@@ -1443,23 +2667,16 @@ public class ControlSheet extends LinearLayout {
         constraintSet.connect(sheetControlButton.getId(), ConstraintSet.TOP, ConstraintSet.PARENT_ID, ConstraintSet.TOP);
         constraintSet.connect(sheetControlButton.getId(), ConstraintSet.BOTTOM, ConstraintSet.PARENT_ID, ConstraintSet.BOTTOM);
 
-        if(stripButtons!=null && stripButtons.size()>1) {
+        if(model.needsButtonChain()) {
 
             constraintSet.clear(sheetControlButton.getId(), ConstraintSet.END);
 
-            for (ControlStripButton stripButton : stripButtons) {
-                constraintSet.connect(stripButton.getId(), ConstraintSet.TOP, ConstraintSet.PARENT_ID, ConstraintSet.TOP);
-                constraintSet.connect(stripButton.getId(), ConstraintSet.BOTTOM, ConstraintSet.PARENT_ID, ConstraintSet.BOTTOM);
+            for (int i = 0; i < model.getStripButtonCount(); i++) {
+                constraintSet.connect(model.getStripButtonIdAt(i), ConstraintSet.TOP, ConstraintSet.PARENT_ID, ConstraintSet.TOP);
+                constraintSet.connect(model.getStripButtonIdAt(i), ConstraintSet.BOTTOM, ConstraintSet.PARENT_ID, ConstraintSet.BOTTOM);
             }
 
-            int[] viewIds = new int[stripButtons.size() + 1];
-
-            for (int i = 0; i < viewIds.length - 1; i++) {
-
-                viewIds[i] = stripButtons.get(i).getId();
-            }
-
-            viewIds[viewIds.length - 1] = sheetControlButton.getId();
+            int[] viewIds = model.buildChainIds(sheetControlButton.getId());
 
             constraintSet.createHorizontalChain(ConstraintSet.PARENT_ID, ConstraintSet.LEFT, ConstraintSet.PARENT_ID, ConstraintSet.RIGHT, viewIds, null, ConstraintSet.CHAIN_SPREAD_INSIDE);
         } else {
@@ -1475,44 +2692,334 @@ public class ControlSheet extends LinearLayout {
 
 
 
+    /***********************************Changes from any thread************************************/
+
+
+    /**
+     * <p>Enables or disables a control strip button, from any thread. Changes posted from any thread are applied together,
+     * on the main thread, on the next frame. If a property is posted more than once before that, only the last value is
+     * applied. See {@link ControlSheet#setControlStripButtonEnabled(int, boolean)}</p>
+     *
+     * @param position The position of the button (starting form 0 or 1, depending on the setup)
+     * @param isEnabled Whether the button should be enabled
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet postControlStripButtonEnabled(@IntRange(from=0) int position, boolean isEnabled){
+        mutations.post(SheetMutationQueue.STRIP_BUTTON_ENABLED, position, isEnabled ? 1 : 0, null);
+        return this;
+    }
+
+    /**
+     * Sets the colour of the control strip's buttons, from any thread. See {@link ControlSheet#postControlStripButtonEnabled(int, boolean)}
+     * for how posted changes are applied
+     *
+     * @param color a {@link ColorInt} of the color
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet postControlStripButtonsColor(@ColorInt int color){
+        mutations.post(SheetMutationQueue.STRIP_BUTTONS_COLOR, 0, color, null);
+        return this;
+    }
+
+    /**
+     * Replaces all the pages of the {@link ViewPager}, from any thread. Unlike {@link ControlSheet#setSheetPagerLayouts(int[])},
+     * the pages already there are replaced, not added to. If the layouts are the same as before, nothing happens. See
+     * {@link ControlSheet#postControlStripButtonEnabled(int, boolean)} for how posted changes are applied
+     *
+     * @param layoutIds The layout ids of the pages (in order)
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet postSheetPagerLayouts(@NonNull int[] layoutIds){
+        mutations.post(SheetMutationQueue.PAGE_LAYOUTS, 0, 0, layoutIds.clone());
+        return this;
+    }
+
+    /**
+     * Sets the sheet's state, from any thread. See {@link ControlSheet#postControlStripButtonEnabled(int, boolean)} for how
+     * posted changes are applied
+     *
+     * @param state Any valid state for the sheet
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet postControlSheetState(@ValidControlSheetState int state){
+        mutations.post(SheetMutationQueue.SHEET_STATE, 0, state, null);
+        return this;
+    }
+
+    /**
+     * Replaces the pages, staying on the current position if there are enough of them. Main thread only
+     *
+     * @param layoutIds The layout ids of the new pages
+     */
+    void replaceSheetPagerLayouts(@NonNull int[] layoutIds){
+        if (Arrays.equals(layoutIds, model.getLayoutIds())) {
+            return;
+        }
+
+        model.clearPages();
+        for (int layoutId : layoutIds) {
+            model.appendPage(layoutId);
+        }
+
+        if (viewPager != null && viewPager.getAdapter() != null) {
+            //Pages in the same positions may be different ones now, so they are all made again
+            rebuildPages();
+        } else {
+            setUpViewPager();
+        }
+    }
+
+
+    /***********************************Pool support (package private)******************************/
+
+
+    /**
+     * <p>Puts the sheet back into a blank state, so that {@link ControlSheetPool} can hand it out again.</p>
+     *
+     * <p>Everything that was expensive to create is kept: the strip, the pager, the indicator and the resolved control
+     * button drawables. Pages, strip buttons and listeners go, every setting is back to its default (see
+     * {@link ControlSheet#applyDefaults()}), and the sheet will look for its {@link BottomSheetBehavior} again in its
+     * next parent</p>
+     */
+    void resetForReuse(){
+
+        if (getParent() instanceof ViewGroup) {
+            ((ViewGroup) getParent()).removeView(this);
+        }
+
+        removeCallbacks(pageMaterializer);
+        mutations.clear();
+        setPageUsageHistory(null);
+
+        model.clearPages();
+        pagesMaterialized = false;
+        pendingPage = -1;
+
+        if (viewPager != null) {
+            viewPager.setAdapter(null);
+        }
+
+        if (pageIndicator != null) {
+            pageIndicator.setVisibility(View.GONE);
+        }
+
+        if (model.getStripButtonCount() > 0) {
+            for (int i = 0; i < model.getStripButtonCount(); i++) {
+                controlStripLayout.removeView(controlStripLayout.findViewById(model.getStripButtonIdAt(i)));
+            }
+            model.clearStripButtons();
+            setControlStripConstraints();
+        }
+
+        inflatedListeners.clear();
+        stateChangedListeners.clear();
+        pageChangedListeners.clear();
+        stripButtonClickListeners.clear();
+        slideListeners.clear();
+        slideEvents.clear();
+        costProfiler = null;
+        sheetBehavior = null;
+        retainedPages = null;
+
+        //Settings go back to their defaults, and the views that already exist follow them
+        applyDefaults();
+        buttonColor = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? resolveThemeButtonColor() : Color.BLACK;
+        setElevationInternal(mElevation);
+        setPageTransformer(false, null);
+        pageSnapPoints.detach();
+
+        if (snapshotCache != null) {
+            snapshotCache.clear();
+            snapshotCache = null;
+        }
+
+        if (viewPager != null) {
+            ((WrappingViewPager) viewPager).setFitCurrentPage(false);
+            ((WrappingViewPager) viewPager).setLayoutFrozen(false);
+            applyOffscreenPageLimit();
+        }
+
+        if (controlStripLayout != null) {
+            controlStripLayout.setVisibility(View.VISIBLE);
+        }
+        applySheetBackground();
+
+        model.resetControlButton();
+        sheetControlButton.setRotation(0);
+        setUpSheetControlButton();
+    }
+
+    /**
+     * <p>Called by {@link ControlSheetPool} after the sheet's {@link Context} was swapped, to re-resolve anything that
+     * depends on the theme: the button colour (unless it was set), the control button's and the strip buttons' drawables,
+     * and the page indicator's colours.</p>
+     *
+     * <p>Views keep the {@link Resources} they were built with, which for pooled sheets are the application's, so anything
+     * that depends on the configuration (rather than the theme) follows the application, not the activity.</p>
+     */
+    void onContextRebound(){
+        if (!buttonColorSet) {
+            buttonColor = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? resolveThemeButtonColor() : Color.BLACK;
+        }
+
+        setUpSheetControlButton();
+
+        for (int i = 0; i < model.getStripButtonCount(); i++) {
+            View button = controlStripLayout.getViewById(model.getStripButtonIdAt(i));
+            Object drawableId = button == null ? null : button.getTag(R.id.controlsheet_strip_button_drawable);
+            if (drawableId instanceof Integer) {
+                ((ControlStripButton) button).setImageDrawable(loadButtonDrawable((Integer) drawableId));
+            }
+        }
+
+        if (pageIndicator != null) {
+            pageIndicator.resolveColors();
+        }
+    }
+
+
     /***********************************Handle Listeners*******************************************/
 
     /**
-     * Set the {@link ControlSheetInflatedListener}
+     * Add a {@link ControlSheetInflatedListener}. There can be any number of them
      * @param listener Listener to listen with
      * @return A {@link ControlSheet} object for method chaining
      */
     public ControlSheet addControlSheetInflatedListener(ControlSheetInflatedListener listener) {
-        this.inflatedListener = listener;
+        inflatedListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Remove a {@link ControlSheetInflatedListener}
+     * @param listener Listener to stop listening with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet removeControlSheetInflatedListener(ControlSheetInflatedListener listener) {
+        inflatedListeners.remove(listener);
         return this;
     }
 
     /**
-     * Returns the current {@link ControlSheetInflatedListener} or {@code null}
-     * @return the current {@link ControlSheetInflatedListener} or {@code null}
+     * Returns the first {@link ControlSheetInflatedListener} or {@code null}
+     * @return the first {@link ControlSheetInflatedListener} or {@code null}
+     * @deprecated There can be more than one listener now, this only returns the first one
      */
+    @Deprecated
     public ControlSheetInflatedListener getControlSheetInflatedListener(){
-        return inflatedListener;
+        return inflatedListeners.first();
     }
 
     /**
-     * Set the {@link ControlSheetStateChangedListener}
+     * Add a {@link ControlSheetStateChangedListener}. There can be any number of them
      * @param listener Listener to listen with
      * @return A {@link ControlSheet} object for method chaining
      */
     public ControlSheet addControlSheetStateChangedListener(ControlSheetStateChangedListener listener) {
-        this.stateChangedListener=listener;
+        stateChangedListeners.add(listener);
         return this;
     }
 
     /**
-     * Returns the current {@link ControlSheetStateChangedListener} or {@code null}
-     * @return the current {@link ControlSheetStateChangedListener} or {@code null}
+     * Remove a {@link ControlSheetStateChangedListener}
+     * @param listener Listener to stop listening with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet removeControlSheetStateChangedListener(ControlSheetStateChangedListener listener) {
+        stateChangedListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Returns the first {@link ControlSheetStateChangedListener} or {@code null}
+     * @return the first {@link ControlSheetStateChangedListener} or {@code null}
+     * @deprecated There can be more than one listener now, this only returns the first one
      */
+    @Deprecated
     public ControlSheetStateChangedListener getControlSheetStateChangedListener() {
-        return stateChangedListener;
+        return stateChangedListeners.first();
+    }
+
+    /**
+     * Add a {@link ControlSheetPageChangedListener}, to hear about the pager changing pages
+     * @param listener Listener to listen with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet addControlSheetPageChangedListener(ControlSheetPageChangedListener listener) {
+        pageChangedListeners.add(listener);
+        return this;
     }
 
+    /**
+     * Remove a {@link ControlSheetPageChangedListener}
+     * @param listener Listener to stop listening with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet removeControlSheetPageChangedListener(ControlSheetPageChangedListener listener) {
+        pageChangedListeners.remove(listener);
+        return this;
+    }
 
-}
+    /**
+     * Add a {@link ControlStripButtonClickListener}, to hear about clicks on any of the control strip buttons (but not
+     * the sheet control button)
+     * @param listener Listener to listen with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet addControlStripButtonClickListener(ControlStripButtonClickListener listener) {
+        stripButtonClickListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Remove a {@link ControlStripButtonClickListener}
+     * @param listener Listener to stop listening with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet removeControlStripButtonClickListener(ControlStripButtonClickListener listener) {
+        stripButtonClickListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * <p>Add a {@link ControlSheetSlideListener}, to hear about the sheet moving. The listener is called on the main thread,
+     * at most once per frame, with the latest offset (the behaviour itself reports every touch event, which can be more
+     * than one per frame)</p>
+     *
+     * @param listener Listener to listen with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet addControlSheetSlideListener(ControlSheetSlideListener listener) {
+        slideListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * <p>Add a {@link ControlSheetSlideListener} that is called on the given {@link Executor}, for heavier work, like
+     * parallax effects or prefetching data, that should stay off the main thread.</p>
+     *
+     * <p>Offsets are still collected once per frame, but there is at most one task on the executor at a time for the
+     * listener. If it's still busy with an offset when newer ones come, it only gets the latest one when it's done.</p>
+     *
+     * @param listener Listener to listen with
+     * @param executor The executor to call it on
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet addControlSheetSlideListener(@NonNull ControlSheetSlideListener listener, @NonNull Executor executor) {
+        slideEvents.addExecutorListener(listener, executor);
+        return this;
+    }
 
+    /**
+     * Remove a {@link ControlSheetSlideListener}, whichever way it was added
+     * @param listener Listener to stop listening with
+     * @return A {@link ControlSheet} object for method chaining
+     */
+    public ControlSheet removeControlSheetSlideListener(ControlSheetSlideListener listener) {
+        slideListeners.remove(listener);
+        slideEvents.removeExecutorListener(listener);
+        return this;
+    }
+
+
+}
@@ -0,0 +1,409 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import java.util.Arrays;
+
+/**
+ * <p>The bookkeeping behind a {@link ControlSheet}, in plain Java: the pager's layout ids, the control strip's button ids,
+ * numbering mode arithmetic, and what the sheet control button should do when the sheet's state changes.</p>
+ *
+ * <p>Everything is kept in primitive int arrays, and there is no Android dependency in here on purpose, so this can be
+ * benchmarked (see the benchmark module) and tested on any JVM. Please keep it that way.</p>
+ */
+final class ControlSheetModel {
+
+    // Same values as BottomSheetBehavior's states, so we don't need the Material library in here
+    static final int STATE_DRAGGING      = 1,
+                     STATE_SETTLING      = 2,
+                     STATE_EXPANDED      = 3,
+                     STATE_COLLAPSED     = 4,
+                     STATE_HIDDEN        = 5,
+                     STATE_HALF_EXPANDED = 6;
+
+    static final int BUTTON_UNCHANGED = 0,  // The sheet control button stays as it is
+                     BUTTON_OPEN      = 1,  // The sheet control button should turn into its "open" state
+                     BUTTON_CLOSE     = 2,  // The sheet control button should turn into its "closed" state
+                     APPEND           = -1, // Position that means "at the end"
+                     NO_ID            = -1; // Same as View.NO_ID
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] pages = EMPTY,          // Layout ids of the pages, in order
+                  stripButtons = EMPTY;   // View ids of the control strip buttons, in order
+
+    private int pageCount,                // Pages actually in the array above
+                stripButtonCount,         // Buttons actually in the array above
+                pageLimit,                // The most pages the pager can have
+                numberingOffset;          // 0 for zero based positions, 1 for natural ones
+
+    private boolean controlButtonOpen;    // Whether the sheet control button is in its "open" state
+
+    ControlSheetModel(int pageLimit, int numberingOffset) {
+        this.pageLimit = pageLimit;
+        this.numberingOffset = numberingOffset;
+    }
+
+
+    /************************************Positions*************************************************/
+
+
+    int getNumberingOffset() {
+        return numberingOffset;
+    }
+
+    void setNumberingOffset(int numberingOffset) {
+        this.numberingOffset = numberingOffset;
+    }
+
+    /**
+     * Turns a position (0 or 1 based, depending on the numbering mode) into a zero based index
+     *
+     * @param position The position
+     * @return The index
+     */
+    int toIndex(int position) {
+        return position - numberingOffset;
+    }
+
+    /**
+     * Turns a zero based index into a position (0 or 1 based, depending on the numbering mode)
+     *
+     * @param index The index
+     * @return The position
+     */
+    int toPosition(int index) {
+        return index + numberingOffset;
+    }
+
+
+    /************************************Pages*****************************************************/
+
+
+    int getPageLimit() {
+        return pageLimit;
+    }
+
+    void setPageLimit(int pageLimit) {
+        this.pageLimit = pageLimit;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Returns the layout id of a page
+     *
+     * @param index The zero based index of the page
+     * @return The layout id
+     */
+    int getLayoutId(int index) {
+        if (index < 0 || index >= pageCount) {
+            throw new IndexOutOfBoundsException("Page " + index + " of " + pageCount);
+        }
+        return pages[index];
+    }
+
+    /**
+     * Returns a copy of all the layout ids, in order
+     *
+     * @return The layout ids
+     */
+    int[] getLayoutIds() {
+        return Arrays.copyOf(pages, pageCount);
+    }
+
+    /**
+     * Finds a page by its layout
+     *
+     * @param layoutId The layout id
+     * @return The zero based index of the first page with that layout, or -1
+     */
+    int indexOfLayout(int layoutId) {
+        for (int i = 0; i < pageCount; i++) {
+            if (pages[i] == layoutId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether a position (0 or 1 based, depending on the numbering mode) points to an existing page
+     *
+     * @param position The position
+     * @return {@code true} if there is a page there
+     */
+    boolean isPagePosition(int position) {
+        int index = toIndex(position);
+        return index >= 0 && index < pageCount;
+    }
+
+    /**
+     * Adds a page at the end, regardless of the page limit. The pages are cut back to the limit by
+     * {@link ControlSheetModel#trimPagesToLimit()}
+     *
+     * @param layoutId The layout id of the page
+     */
+    void appendPage(int layoutId) {
+        pages = grow(pages, pageCount + 1);
+        pages[pageCount++] = layoutId;
+    }
+
+    /**
+     * Adds a page in a position, if the limit allows
+     *
+     * @param layoutId The layout id of the page
+     * @param position Position (0 or 1 based, depending on the numbering mode), or {@link ControlSheetModel#APPEND}
+     * @return {@code true} if the page was added, {@code false} if the pager is full, or the position is not valid
+     */
+    boolean addPage(int layoutId, int position) {
+        int index = position == APPEND ? pageCount : toIndex(position);
+
+        if (pageCount >= pageLimit || index < 0 || index > pageCount) {
+            return false;
+        }
+
+        pages = grow(pages, pageCount + 1);
+        System.arraycopy(pages, index, pages, index + 1, pageCount - index);
+        pages[index] = layoutId;
+        pageCount++;
+        return true;
+    }
+
+    /**
+     * Removes the page from a position
+     *
+     * @param position Position (0 or 1 based, depending on the numbering mode)
+     * @return {@code true} if there was a page to remove
+     */
+    boolean removePage(int position) {
+        if (!isPagePosition(position)) {
+            return false;
+        }
+
+        int index = toIndex(position);
+        System.arraycopy(pages, index + 1, pages, index, pageCount - index - 1);
+        pageCount--;
+        return true;
+    }
+
+    /**
+     * Drops the pages above the limit
+     *
+     * @return {@code true} if there were any to drop
+     */
+    boolean trimPagesToLimit() {
+        if (pageCount > pageLimit) {
+            pageCount = Math.max(0, pageLimit);
+            return true;
+        }
+        return false;
+    }
+
+    void clearPages() {
+        pageCount = 0;
+    }
+
+
+    /************************************Strip buttons*********************************************/
+
+
+    int getStripButtonCount() {
+        return stripButtonCount;
+    }
+
+    /**
+     * Returns the view id of a strip button
+     *
+     * @param index The zero based index of the button
+     * @return The view id
+     */
+    int getStripButtonIdAt(int index) {
+        if (index < 0 || index >= stripButtonCount) {
+            throw new IndexOutOfBoundsException("Button " + index + " of " + stripButtonCount);
+        }
+        return stripButtons[index];
+    }
+
+    /**
+     * Whether a position (0 or 1 based, depending on the numbering mode) points to an existing strip button
+     *
+     * @param position The position
+     * @return {@code true} if there is a button there
+     */
+    boolean isStripButtonPosition(int position) {
+        int index = toIndex(position);
+        return index >= 0 && index < stripButtonCount;
+    }
+
+    /**
+     * Returns the view id of the strip button in a position
+     *
+     * @param position Position (0 or 1 based, depending on the numbering mode)
+     * @return The view id, or {@link ControlSheetModel#NO_ID} if there is no button there
+     */
+    int getStripButtonId(int position) {
+        return isStripButtonPosition(position) ? stripButtons[toIndex(position)] : NO_ID;
+    }
+
+    /**
+     * Finds a strip button by its view id
+     *
+     * @param viewId The view id
+     * @return The zero based index of the button, or -1
+     */
+    int indexOfStripButton(int viewId) {
+        for (int i = 0; i < stripButtonCount; i++) {
+            if (stripButtons[i] == viewId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void addStripButton(int viewId) {
+        stripButtons = grow(stripButtons, stripButtonCount + 1);
+        stripButtons[stripButtonCount++] = viewId;
+    }
+
+    /**
+     * Removes the strip button from a position
+     *
+     * @param position Position (0 or 1 based, depending on the numbering mode)
+     * @return The view id of the removed button, or {@link ControlSheetModel#NO_ID} if there was no button there
+     */
+    int removeStripButton(int position) {
+        if (!isStripButtonPosition(position)) {
+            return NO_ID;
+        }
+
+        int index = toIndex(position),
+            viewId = stripButtons[index];
+        System.arraycopy(stripButtons, index + 1, stripButtons, index, stripButtonCount - index - 1);
+        stripButtonCount--;
+        return viewId;
+    }
+
+    void clearStripButtons() {
+        stripButtonCount = 0;
+    }
+
+    /**
+     * Whether the strip buttons (and the sheet control button) should be chained, or the control button simply aligned to
+     * the end
+     *
+     * @return {@code true} for a chain
+     */
+    boolean needsButtonChain() {
+        return stripButtonCount > 1;
+    }
+
+    /**
+     * Builds the ids for the control strip's horizontal chain: the strip buttons in order, then the sheet control button
+     *
+     * @param controlButtonId The view id of the sheet control button
+     * @return A new array of view ids
+     */
+    int[] buildChainIds(int controlButtonId) {
+        int[] ids = Arrays.copyOf(stripButtons, stripButtonCount + 1);
+        ids[stripButtonCount] = controlButtonId;
+        return ids;
+    }
+
+
+    /************************************Sheet state***********************************************/
+
+
+    boolean isControlButtonOpen() {
+        return controlButtonOpen;
+    }
+
+    /**
+     * Puts the sheet control button back into its "closed" state, without animating anything
+     */
+    void resetControlButton() {
+        controlButtonOpen = false;
+    }
+
+    /**
+     * <p>Works out what the sheet control button should do when the sheet's state changes. Settling flips it (the sheet
+     * is on its way to the other state), while expanded and collapsed only fix it up, in case the sheet was dragged all the
+     * way and never settled.</p>
+     *
+     * @param newState The sheet's new state
+     * @return {@link ControlSheetModel#BUTTON_OPEN}, {@link ControlSheetModel#BUTTON_CLOSE} or {@link ControlSheetModel#BUTTON_UNCHANGED}
+     */
+    int onSheetStateChanged(int newState) {
+        switch (newState) {
+            case STATE_SETTLING:
+                controlButtonOpen = !controlButtonOpen;
+                return controlButtonOpen ? BUTTON_OPEN : BUTTON_CLOSE;
+            case STATE_EXPANDED:
+                if (!controlButtonOpen) {
+                    controlButtonOpen = true;
+                    return BUTTON_OPEN;
+                }
+                return BUTTON_UNCHANGED;
+            case STATE_COLLAPSED:
+                if (controlButtonOpen) {
+                    controlButtonOpen = false;
+                    return BUTTON_CLOSE;
+                }
+                return BUTTON_UNCHANGED;
+            default:
+                return BUTTON_UNCHANGED;
+        }
+    }
+
+    /**
+     * Whether the sheet is on the move in a state
+     *
+     * @param state The sheet's state
+     * @return {@code true} while dragging or settling
+     */
+    static boolean isMoving(int state) {
+        return state == STATE_DRAGGING || state == STATE_SETTLING;
+    }
+
+    /**
+     * Whether the pages can be seen in a state. Anything but collapsed means the sheet is moving or open
+     *
+     * @param state The sheet's state
+     * @return {@code true} unless collapsed
+     */
+    static boolean showsPages(int state) {
+        return state != STATE_COLLAPSED;
+    }
+
+
+    /**
+     * Makes sure an array can hold a number of items, growing it by half if it can't
+     */
+    private static int[] grow(int[] array, int minLength) {
+        if (array.length >= minLength) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(minLength, array.length + (array.length >> 1) + 4));
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+import com.google.android.material.bottomsheet.BottomSheetBehavior;
+
+import java.util.ArrayDeque;
+
+/**
+ * <p>A pool of ready-made {@link ControlSheet}s, for screens that are opened and closed often (fragments, dialogs, lists).</p>
+ *
+ * <p>The pool can build a number of sheets in advance, while the main thread is idle, so that they are already constructed,
+ * with their base hierarchy built and drawables resolved, by the time they are needed. A {@link SheetConfigurator} can be
+ * supplied to apply the same setup (pages, buttons, colours...) to every sheet, so they are handed out configured.</p>
+ *
+ * <pre>
+ *     ControlSheetPool pool = new ControlSheetPool(getApplicationContext(), 2, new ControlSheetPool.SheetConfigurator() {
+ *         &commat;Override
+ *         public void configure(ControlSheet sheet) {
+ *             sheet.setSheetPagerLayouts(layoutIds)
+ *                  .addControlStripButton(R.drawable.button_1, buttonOneOnclickListener);
+ *         }
+ *     }).prewarm(2);
+ *
+ *     ControlSheet sheet = pool.acquire(getContext()); // Add it to your CoordinatorLayout
+ *     ...
+ *     pool.release(sheet);                            // When you're done with it
+ * </pre>
+ *
+ * <p>Sheets are built on a {@link MutableContextWrapper}, so when a sheet is acquired for a different {@link Context}
+ * (e.g. a new activity after rotation), it is rebound to that context, and everything that comes from the theme (button
+ * colour and drawables, page indicator colours) is resolved again. Idle sheets are bound to the application context,
+ * whatever context the pool was created with, so they never keep an activity alive. The views keep the application's
+ * {@link android.content.res.Resources} though, so sizes and other configuration dependent values follow the application's
+ * configuration, not any overrides of the activity.</p>
+ *
+ * <p>Pooled sheets come with {@link CoordinatorLayout.LayoutParams} and a fresh {@link BottomSheetBehavior}, so there is
+ * no need to add a behaviour manually. All methods must be called from the main thread.</p>
+ *
+ * <p>The pool lets go of its idle sheets when memory runs low, and keeps at most one on low RAM devices. It only listens
+ * to memory pressure while it holds idle sheets, so an empty pool is never referenced by the application, and a pool that
+ * is dropped with {@link ControlSheetPool#clear()} or {@link ControlSheetPool#dispose()} can be collected.</p>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class ControlSheetPool implements ComponentCallbacks2 {
+
+    /**
+     * Applies the common setup to every sheet the pool builds or takes back
+     */
+    public interface SheetConfigurator {
+        void configure(ControlSheet sheet);
+    }
+
+    private final Context poolContext;                   // The application context, idle sheets are bound to this one
+    private final int maxIdleSheets;                     // Never keep more than this many sheets around
+    private final SheetConfigurator configurator;        // Optional common setup
+    private final ArrayDeque<ControlSheet> idleSheets;   // Ready to go
+
+    private int pendingPrewarm;                          // How many sheets are still to be built in idle time
+    private boolean idleHandlerQueued;
+    private boolean callbacksRegistered;                 // Only while there are idle sheets to let go of
+
+    private final MessageQueue.IdleHandler prewarmer = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            //One sheet per idle pass, so that we never hog the thread
+            if (pendingPrewarm > 0 && idleSheets.size() < maxIdleSheets) {
+                idleSheets.addLast(buildSheet());
+                pendingPrewarm--;
+                updateMemoryCallbacks();
+            } else {
+                pendingPrewarm = 0;
+            }
+
+            idleHandlerQueued = pendingPrewarm > 0;
+            return idleHandlerQueued;
+        }
+    };
+
+    /**
+     * Creates an empty pool. Nothing is built until {@link ControlSheetPool#prewarm(int)} or {@link ControlSheetPool#acquire(Context)}
+     * is called.
+     *
+     * @param context Any context. Only its application context is kept, and idle sheets are bound to that
+     * @param maxIdleSheets The maximum number of sheets to keep around
+     * @param configurator Optional setup, applied to every sheet before it is handed out
+     */
+    public ControlSheetPool(@NonNull Context context, @IntRange(from = 1) int maxIdleSheets, @Nullable SheetConfigurator configurator) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRamDevice = activityManager != null && activityManager.isLowRamDevice();
+
+        this.poolContext = context.getApplicationContext();
+        this.maxIdleSheets = lowRamDevice ? 1 : maxIdleSheets;
+        this.configurator = configurator;
+        this.idleSheets = new ArrayDeque<>(this.maxIdleSheets);
+    }
+
+    /**
+     * Builds up to {@code count} sheets (but no more than the pool's maximum) while the main thread is idle, one at a time.
+     *
+     * @param count The number of sheets to build in advance
+     * @return The {@link ControlSheetPool} for method chaining
+     */
+    public ControlSheetPool prewarm(@IntRange(from = 0) int count) {
+        pendingPrewarm = Math.min(count, maxIdleSheets - idleSheets.size());
+
+        if (pendingPrewarm > 0 && !idleHandlerQueued) {
+            idleHandlerQueued = true;
+            Looper.myQueue().addIdleHandler(prewarmer);
+        }
+        return this;
+    }
+
+    /**
+     * Hands out a ready sheet, bound to the given {@link Context}. If the pool is empty, a new one is built on the spot.
+     *
+     * @param context The context the sheet will live in (usually the activity)
+     * @return A configured {@link ControlSheet}, with {@link CoordinatorLayout.LayoutParams} and a {@link BottomSheetBehavior}
+     */
+    @NonNull
+    public ControlSheet acquire(@NonNull Context context) {
+        ControlSheet sheet = idleSheets.pollFirst();
+
+        if (sheet == null) {
+            sheet = buildSheet();
+        } else {
+            updateMemoryCallbacks();
+        }
+
+        rebind(sheet, context);
+        return sheet;
+    }
+
+    /**
+     * <p>Takes a sheet back for reuse. It is removed from its parent, stripped of its pages, buttons and listeners,
+     * rebound to the pool's context, and set up again with the {@link SheetConfigurator}. If the pool is full,
+     * the sheet is simply let go.</p>
+     *
+     * <p>Nothing else survives: every setting goes back to the default of a brand new sheet (strip, peek height, button
+     * style and colour, numbering, page limit, snapshots, transitions...), so the next one to acquire it only gets
+     * what the configurator sets.</p>
+     *
+     * @param sheet A sheet that came from {@link ControlSheetPool#acquire(Context)}
+     */
+    public void release(@NonNull ControlSheet sheet) {
+        if (!(sheet.getContext() instanceof MutableContextWrapper) || idleSheets.contains(sheet)) {
+            return;
+        }
+
+        sheet.resetForReuse();
+        rebind(sheet, poolContext);
+
+        if (idleSheets.size() < maxIdleSheets) {
+            prepare(sheet);
+            idleSheets.addLast(sheet);
+            updateMemoryCallbacks();
+        }
+    }
+
+    /**
+     * Drops all idle sheets, and stops any prewarming still waiting for idle time
+     */
+    public void clear() {
+        pendingPrewarm = 0;
+        idleSheets.clear();
+        updateMemoryCallbacks();
+    }
+
+    /**
+     * Drops all idle sheets, and stops any prewarming. Once disposed, nothing outside the app's own code references the pool.
+     * It can still be used afterwards, and will listen to memory pressure again as soon as it holds idle sheets
+     */
+    public void dispose() {
+        clear();
+
+        if (idleHandlerQueued) {
+            idleHandlerQueued = false;
+            Looper.myQueue().removeIdleHandler(prewarmer);
+        }
+    }
+
+    /**
+     * Idle sheets are the first thing to go when memory runs low
+     *
+     * @param level The trim level
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) { /*Not our business*/ }
+
+    /**
+     * Returns the number of sheets ready to be handed out
+     * @return the number of idle sheets
+     */
+    public int getIdleCount() {
+        return idleSheets.size();
+    }
+
+    /**
+     * Builds a brand new sheet on a swappable context, and sets it up
+     *
+     * @return The new sheet
+     */
+    private ControlSheet buildSheet() {
+        ControlSheet sheet = new ControlSheet(new MutableContextWrapper(poolContext));
+        prepare(sheet);
+        return sheet;
+    }
+
+    /**
+     * Gives the sheet fresh layout params with a fresh behaviour (so no state is carried over), and applies the configurator
+     *
+     * @param sheet The sheet to prepare
+     */
+    private void prepare(ControlSheet sheet) {
+        CoordinatorLayout.LayoutParams params = new CoordinatorLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        params.setBehavior(new BottomSheetBehavior<ControlSheet>());
+        sheet.setLayoutParams(params);
+
+        if (configurator != null) {
+            configurator.configure(sheet);
+        }
+    }
+
+    /**
+     * Listens to memory pressure while there are idle sheets, and stops as soon as there are none, so that the application
+     * only holds on to the pool while it has something to give back
+     */
+    private void updateMemoryCallbacks() {
+        boolean needed = !idleSheets.isEmpty();
+
+        if (needed != callbacksRegistered) {
+            callbacksRegistered = needed;
+
+            if (needed) {
+                poolContext.registerComponentCallbacks(this);
+            } else {
+                poolContext.unregisterComponentCallbacks(this);
+            }
+        }
+    }
+
+    /**
+     * Swaps the sheet's base context, if it's not the one we want already
+     *
+     * @param sheet The sheet to rebind
+     * @param context The new context
+     */
+    private static void rebind(ControlSheet sheet, Context context) {
+        MutableContextWrapper wrapper = (MutableContextWrapper) sheet.getContext();
+
+        if (wrapper.getBaseContext() != context) {
+            wrapper.setBaseContext(context);
+            sheet.onContextRebound();
+        }
+    }
+}
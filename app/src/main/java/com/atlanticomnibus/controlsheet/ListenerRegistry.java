@@ -0,0 +1,126 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * <p>A copy-on-write set of listeners. Adding or removing one makes a new array, but dispatching is just a loop over the
+ * current one, nothing is allocated (not even an iterator). Listeners may add or remove listeners while being
+ * called, that only affects the next dispatch.</p>
+ *
+ * <pre>
+ *     for (ControlSheetSlideListener listener : slideListeners.get()) {
+ *         listener.onControlSheetSlide(slideOffset);
+ *     }
+ * </pre>
+ *
+ * @param <T> The listener type
+ */
+final class ListenerRegistry<T> {
+
+    private volatile T[] listeners; // Never modified once set, only replaced
+
+    /**
+     * @param empty An empty array of the listener type, since generic arrays can't be created otherwise
+     */
+    ListenerRegistry(@NonNull T[] empty) {
+        listeners = empty;
+    }
+
+    /**
+     * Adds a listener, unless it's already there
+     *
+     * @param listener The listener
+     * @return {@code true} if it was added
+     */
+    synchronized boolean add(@Nullable T listener) {
+        if (listener == null || indexOf(listener) >= 0) {
+            return false;
+        }
+
+        T[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[listeners.length] = listener;
+        listeners = grown;
+        return true;
+    }
+
+    /**
+     * Removes a listener
+     *
+     * @param listener The listener
+     * @return {@code true} if it was there
+     */
+    synchronized boolean remove(@Nullable T listener) {
+        int index = indexOf(listener);
+        if (index < 0) {
+            return false;
+        }
+
+        T[] shrunk = Arrays.copyOf(listeners, listeners.length - 1);
+        System.arraycopy(listeners, index + 1, shrunk, index, listeners.length - index - 1);
+        listeners = shrunk;
+        return true;
+    }
+
+    synchronized void clear() {
+        listeners = Arrays.copyOf(listeners, 0);
+    }
+
+    /**
+     * Returns the current listeners, to loop over. The array must not be modified
+     *
+     * @return The listeners
+     */
+    @NonNull
+    T[] get() {
+        return listeners;
+    }
+
+    boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    /**
+     * Returns the first listener that was added (and is still there)
+     *
+     * @return The listener, or {@code null}
+     */
+    @Nullable
+    T first() {
+        T[] current = listeners;
+        return current.length > 0 ? current[0] : null;
+    }
+
+    private int indexOf(@Nullable T listener) {
+        T[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
+
+import com.google.android.material.bottomsheet.BottomSheetBehavior;
+
+/**
+ * <p>Keeps track of each page's nested scrolling container, so that {@link BottomSheetBehavior} always deals with the
+ * one on the current page.</p>
+ *
+ * <p>The behaviour looks for "the" nested scrolling child by walking the whole sheet during layout, and takes the first one it
+ * finds, no matter which page it is on. Here, every page is searched once, when it's instantiated (and the pages are
+ * searched again when the adapter's data set changes, since the tracker knows them by position), and only the current
+ * page's container has nested scrolling enabled, so the behaviour's search can only find that one.</p>
+ *
+ * <p>Note: This only decides what the behaviour finds, not how it looks. {@link BottomSheetBehavior} still walks the sheet
+ * itself on every layout, and only picks up a new container on its next one, so the sheet asks for a layout when the
+ * container changes.</p>
+ */
+class NestedScrollTracker {
+
+    private final SparseArray<View> scrollingChildren = new SparseArray<>(); // Page position -> its scrolling container
+    private int currentPosition;
+
+    /**
+     * Finds and registers the page's scrolling container. Containers of pages that are not current get nested scrolling
+     * turned off (they are the only ones we ever turn off, and they get it back when they become current, or when the
+     * tracker lets go of them)
+     *
+     * @param position The position of the page
+     * @param page The page itself
+     */
+    void onPageInstantiated(int position, @NonNull View page) {
+        View scrollingChild = findScrollingChild(page);
+        restore(scrollingChildren.get(position));
+
+        if (scrollingChild == null) {
+            scrollingChildren.remove(position);
+        } else {
+            scrollingChildren.put(position, scrollingChild);
+            ViewCompat.setNestedScrollingEnabled(scrollingChild, position == currentPosition);
+        }
+    }
+
+    void onPageDestroyed(int position) {
+        restore(scrollingChildren.get(position));
+        scrollingChildren.remove(position);
+    }
+
+    /**
+     * Forgets every page, e.g. when the adapter is replaced, or before the pages are handed over to another sheet. Every
+     * container gets its nested scrolling back, so whoever gets the pages next finds them as they were inflated
+     *
+     * @param currentPosition The pager's current position
+     */
+    void reset(int currentPosition) {
+        for (int i = 0; i < scrollingChildren.size(); i++) {
+            restore(scrollingChildren.valueAt(i));
+        }
+        scrollingChildren.clear();
+        this.currentPosition = currentPosition;
+    }
+
+    /**
+     * Starts over with the pages the pager has right now, by the positions they're tagged with. For data set changes, where
+     * positions may not mean the same pages anymore, and the pager doesn't tell which of them it keeps
+     *
+     * @param pager The pager
+     * @param currentPosition The pager's current position
+     */
+    void rescan(@NonNull ViewGroup pager, int currentPosition) {
+        reset(currentPosition);
+
+        for (int i = 0, count = pager.getChildCount(); i < count; i++) {
+            View page = pager.getChildAt(i);
+            Object position = page.getTag(R.id.controlsheet_page_position);
+            if (position instanceof Integer) {
+                onPageInstantiated((Integer) position, page);
+            }
+        }
+    }
+
+    /**
+     * Moves nested scrolling over to the new current page, by turning it off for the previous page's container, and on for
+     * the new one's
+     *
+     * @param position The new current position
+     * @return Whether the scrolling container changed, so the behaviour needs a layout to find the new one
+     */
+    boolean setCurrentPage(int position) {
+        View previous = scrollingChildren.get(currentPosition);
+        if (previous != null && position != currentPosition) {
+            ViewCompat.setNestedScrollingEnabled(previous, false);
+        }
+
+        currentPosition = position;
+
+        View current = scrollingChildren.get(position);
+        if (current != null) {
+            ViewCompat.setNestedScrollingEnabled(current, true);
+        }
+        return current != previous;
+    }
+
+    /**
+     * Gives a container we may have turned off its nested scrolling back. We only ever track containers that had it on
+     *
+     * @param scrollingChild The container, or {@code null}
+     */
+    private static void restore(@Nullable View scrollingChild) {
+        if (scrollingChild != null) {
+            ViewCompat.setNestedScrollingEnabled(scrollingChild, true);
+        }
+    }
+
+    /**
+     * Depth first search for the first view with nested scrolling enabled, the same way {@link BottomSheetBehavior} does
+     *
+     * @param view Where to start
+     * @return The scrolling container, or {@code null} if there is none
+     */
+    @Nullable
+    private static View findScrollingChild(View view) {
+        if (ViewCompat.isNestedScrollingEnabled(view)) {
+            return view;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0, count = group.getChildCount(); i < count; i++) {
+                View scrollingChild = findScrollingChild(group.getChildAt(i));
+                if (scrollingChild != null) {
+                    return scrollingChild;
+                }
+            }
+        }
+        return null;
+    }
+}
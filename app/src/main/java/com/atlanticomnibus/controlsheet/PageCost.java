@@ -0,0 +1,122 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * <p>What a page of the {@link ControlSheet} cost the first time it was shown: the time it took to inflate it, and to run
+ * its first measure, layout and draw passes. All times are in nanoseconds, measured on the main thread.</p>
+ *
+ * <p>Note: With hardware acceleration, the draw time is the time it took to record the page's drawing commands, not the
+ * time the GPU spent on them.</p>
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PageCost {
+
+    /**
+     * The position of a page that could not be told, out of range whether numbering starts from 0 or 1
+     */
+    public static final int UNKNOWN_POSITION = Integer.MIN_VALUE;
+
+    private final int layoutId,
+                      position;
+
+    private final long inflateNanos,
+                       measureNanos,
+                       layoutNanos,
+                       drawNanos;
+
+    PageCost(int layoutId, int position, long inflateNanos, long measureNanos, long layoutNanos, long drawNanos) {
+        this.layoutId = layoutId;
+        this.position = position;
+        this.inflateNanos = inflateNanos;
+        this.measureNanos = measureNanos;
+        this.layoutNanos = layoutNanos;
+        this.drawNanos = drawNanos;
+    }
+
+    /**
+     * Returns the id of the page's layout
+     * @return the id of the page's layout
+     */
+    public int getLayoutId() {
+        return layoutId;
+    }
+
+    /**
+     * Returns the page's position in the pager (starting form 0 or 1, depending on the setup, at the time it was measured)
+     * @return the page's position in the pager, or {@link PageCost#UNKNOWN_POSITION} if it could not be told
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the time spent inflating the page's layout
+     * @return the time spent inflating the page's layout
+     */
+    public long getInflateNanos() {
+        return inflateNanos;
+    }
+
+    /**
+     * Returns the time spent measuring the page, until it was first laid out. The pager may measure a page more than once
+     * @return the time spent measuring the page, until it was first laid out
+     */
+    public long getMeasureNanos() {
+        return measureNanos;
+    }
+
+    /**
+     * Returns the time spent laying the page out for the first time
+     * @return the time spent laying the page out for the first time
+     */
+    public long getLayoutNanos() {
+        return layoutNanos;
+    }
+
+    /**
+     * Returns the time spent drawing the page for the first time
+     * @return the time spent drawing the page for the first time
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    /**
+     * Returns the time of all the above together
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return inflateNanos + measureNanos + layoutNanos + drawNanos;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PageCost{layoutId=0x" + Integer.toHexString(layoutId) + ", position=" + position
+                + ", inflate=" + inflateNanos / 1000 + "us, measure=" + measureNanos / 1000
+                + "us, layout=" + layoutNanos / 1000 + "us, draw=" + drawNanos / 1000
+                + "us, total=" + getTotalNanos() / 1000 + "us}";
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Gets told about pages of the {@link ControlSheet} that took longer to inflate, measure, lay out and draw for the first
+ * time, than the budget set with {@link ControlSheet#setPageCostBudget(float)}
+ */
+@SuppressWarnings("unused")
+public interface PageCostListener {
+
+    /**
+     * Called after the first draw of a page that went over budget
+     *
+     * @param layoutId The id of the page's layout
+     * @param position The page's position (starting form 0 or 1, depending on the setup), or {@link PageCost#UNKNOWN_POSITION}
+     * @param cost What the page cost
+     */
+    void onPageOverBudget(int layoutId, int position, @NonNull PageCost cost);
+
+}
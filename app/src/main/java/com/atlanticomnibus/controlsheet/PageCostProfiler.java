@@ -0,0 +1,86 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * <p>Collects what {@link PageFrame}s report about their first inflate, measure, layout and draw, keeps the last
+ * {@link PageCost} of every layout, and tells the {@link PageCostListener} about the ones over budget.</p>
+ */
+class PageCostProfiler {
+
+    private final SparseArray<PageCost> costs = new SparseArray<>(); // Last cost of every page, by layout id
+    private final ControlSheetModel model;                           // To number the pages like the sheet does
+
+    private PageCostListener listener;
+    private long budgetNanos;
+
+    PageCostProfiler(@NonNull ControlSheetModel model, @Nullable PageCostListener listener, long budgetNanos) {
+        this.model = model;
+        this.listener = listener;
+        this.budgetNanos = budgetNanos;
+    }
+
+    void setListener(@Nullable PageCostListener listener) {
+        this.listener = listener;
+    }
+
+    void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Returns the last known cost of a page
+     *
+     * @param layoutId The id of the page's layout
+     * @return The cost, or {@code null} if the page has not been shown (since profiling was turned on)
+     */
+    @Nullable
+    PageCost getCost(int layoutId) {
+        return costs.get(layoutId);
+    }
+
+    /**
+     * Called by a {@link PageFrame}, after the page's first draw
+     *
+     * @param layoutId The id of the page's layout
+     * @param index The page's zero based index, or {@link PageCost#UNKNOWN_POSITION}
+     * @param inflateNanos The time the inflation took
+     * @param measureNanos The time the measure passes took, until the first layout
+     * @param layoutNanos The time the first layout took
+     * @param drawNanos The time the first draw took
+     */
+    void report(int layoutId, int index, long inflateNanos, long measureNanos, long layoutNanos, long drawNanos) {
+        int position = index == PageCost.UNKNOWN_POSITION ? PageCost.UNKNOWN_POSITION : model.toPosition(index);
+        PageCost cost = new PageCost(layoutId, position, inflateNanos, measureNanos, layoutNanos, drawNanos);
+
+        costs.put(cost.getLayoutId(), cost);
+
+        if (listener != null && cost.getTotalNanos() > budgetNanos) {
+            listener.onPageOverBudget(cost.getLayoutId(), cost.getPosition(), cost);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * <p>A plain container the {@link SimplePagerAdapter} wraps every page into, when the sheet needs to keep an eye on its pages.</p>
+ *
+ * <p>With a {@link PageSnapshotCache}, while the pager is being swiped or the sheet is moving, the page is drawn from a cached
+ * bitmap instead of its (possibly very complex) live views. Any invalidation coming from the page content marks the snapshot
+ * stale, and it is re-captured once things are idle again.</p>
+ *
+ * <p>With a {@link PageCostProfiler}, the frame times the page's first measure, layout and draw passes, and reports them
+ * (along with the inflation time, which the adapter measures) after the first draw.</p>
+ */
+@SuppressLint("ViewConstructor")
+class PageFrame extends FrameLayout {
+
+    private final PageSnapshotCache snapshotCache;
+    private final int layoutId;
+
+    private boolean snapshotDirty = true;
+
+    private PageCostProfiler costProfiler; // Only there until the page's first draw is reported
+    private long inflateNanos,
+                 measureNanos,
+                 layoutNanos;
+
+    PageFrame(Context context, int layoutId, PageSnapshotCache snapshotCache) {
+        super(context);
+        this.layoutId = layoutId;
+        this.snapshotCache = snapshotCache;
+    }
+
+    /**
+     * Returns the id of the layout this frame holds
+     * @return the layout id
+     */
+    int getLayoutId() {
+        return layoutId;
+    }
+
+    /**
+     * Returns the actual page, the root of the inflated layout
+     * @return the page's root view
+     */
+    View getPage() {
+        return getChildAt(0);
+    }
+
+    /**
+     * Starts timing the page's first passes. Called by the adapter, right after inflating the page into the frame
+     *
+     * @param profiler The profiler to report to
+     * @param inflateNanos The time the inflation took
+     */
+    void profile(@NonNull PageCostProfiler profiler, long inflateNanos) {
+        this.costProfiler = profiler;
+        this.inflateNanos = inflateNanos;
+    }
+
+    boolean isSnapshotDirty() {
+        return snapshotDirty;
+    }
+
+    /**
+     * Draws the live page into the given bitmap. Only ever called by the {@link PageSnapshotCache}, while idle
+     *
+     * @param bitmap Bitmap to draw into, already the right size
+     * @param canvas A reusable canvas
+     */
+    void drawSnapshot(@NonNull Bitmap bitmap, @NonNull Canvas canvas) {
+        bitmap.eraseColor(0);
+        canvas.setBitmap(bitmap);
+        super.dispatchDraw(canvas);
+        canvas.setBitmap(null);
+        snapshotDirty = false;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (costProfiler == null || layoutNanos > 0) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+
+        long start = System.nanoTime();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        measureNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (costProfiler == null || layoutNanos > 0) {
+            super.onLayout(changed, left, top, right, bottom);
+            return;
+        }
+
+        long start = System.nanoTime();
+        super.onLayout(changed, left, top, right, bottom);
+        layoutNanos = Math.max(1, System.nanoTime() - start);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (snapshotCache != null) {
+            if (snapshotCache.isFrozen()) {
+                Bitmap snapshot = snapshotCache.get(this);
+                if (snapshot != null) {
+                    canvas.drawBitmap(snapshot, 0, 0, null);
+                    return;
+                }
+            } else if (snapshotDirty || snapshotCache.get(this) == null) {
+                snapshotCache.scheduleCapture(this);
+            }
+        }
+
+        if (costProfiler != null) {
+            long start = System.nanoTime();
+            super.dispatchDraw(canvas);
+            reportCost(System.nanoTime() - start);
+            return;
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    /**
+     * Hands the page's first-time costs to the profiler, and stops profiling
+     *
+     * @param drawNanos The time the first draw took
+     */
+    private void reportCost(long drawNanos) {
+        Object position = getTag(R.id.controlsheet_page_position);
+        PageCostProfiler profiler = costProfiler;
+        costProfiler = null;
+        profiler.report(layoutId, position instanceof Integer ? (Integer) position : PageCost.UNKNOWN_POSITION,
+                inflateNanos, measureNanos, layoutNanos, drawNanos);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @Override
+    public void onDescendantInvalidated(@NonNull View child, @NonNull View target) {
+        snapshotDirty = true;
+        super.onDescendantInvalidated(child, target);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        snapshotDirty = true;
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        snapshotDirty = true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (snapshotCache != null) {
+            snapshotCache.register(this);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (snapshotCache != null) {
+            snapshotCache.unregister(this);
+        }
+    }
+
+    /**
+     * Unwraps a pager child: if it's a {@link PageFrame}, returns the page in it, otherwise the child itself
+     *
+     * @param pagerChild A direct child of the {@link androidx.viewpager.widget.ViewPager}
+     * @return The root of the page layout
+     */
+    static ViewGroup unwrap(View pagerChild) {
+        if (pagerChild instanceof PageFrame) {
+            return (ViewGroup) ((PageFrame) pagerChild).getPage();
+        }
+        return (ViewGroup) pagerChild;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.viewpager.widget.PagerAdapter;
+import androidx.viewpager.widget.ViewPager;
+
+/**
+ * <p>A single, lightweight view that draws the page indicator dots under the {@link ViewPager}, instead of a whole
+ * TabLayout with a view (and a selector drawable) per page.</p>
+ *
+ * <p>The selected dot slides smoothly between the dots, following the pager's scroll offset. When there are too many pages
+ * for dots to make sense (more than {@link PageIndicatorView#MAX_DOTS}), it switches to a compact "3 / 42" text instead.
+ * Nothing is allocated while the pager is being swiped, the text is only re-formatted (into a reused buffer) when
+ * the page actually changes.</p>
+ */
+@SuppressLint("ViewConstructor")
+class PageIndicatorView extends View implements ViewPager.OnPageChangeListener, ViewPager.OnAdapterChangeListener {
+
+    private static final int MAX_DOTS                  = 9,  // Above this, it's "3 / 42"
+                             DOT_RADIUS_VALUE          = 4,  // Same as the old ring drawables
+                             DOT_SPACING_VALUE         = 15, // Same as the old tab width
+                             COMPACT_TEXT_SIZE_VALUE   = 12;
+
+    private static final char[] SEPARATOR = {' ', '/', ' '};
+
+    private final Paint dotPaint,
+                        selectedDotPaint,
+                        textPaint;
+
+    private final float dotRadius,
+                        dotSpacing;
+
+    private final char[] compactText = new char[23]; // Two ints and the separator, it can't get longer than this
+
+    private int pageCount,
+                scrollPosition,
+                compactTextLength,
+                compactTextPosition = -1;
+
+    private float scrollOffset;
+
+    private ViewPager viewPager;
+
+    private final DataSetObserver dataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            updatePageCount();
+        }
+
+        @Override
+        public void onInvalidated() {
+            updatePageCount();
+        }
+    };
+
+    PageIndicatorView(Context context) {
+        super(context);
+
+        Resources resources = getResources();
+        dotRadius = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DOT_RADIUS_VALUE, resources.getDisplayMetrics());
+        dotSpacing = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DOT_SPACING_VALUE, resources.getDisplayMetrics());
+
+        dotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        selectedDotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        resolveColors();
+
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, COMPACT_TEXT_SIZE_VALUE, resources.getDisplayMetrics()));
+    }
+
+    /**
+     * Hooks the indicator up to a {@link ViewPager}. Safe to call repeatedly, it will only register its listeners once
+     *
+     * @param pager The {@link ViewPager} to follow
+     */
+    void attachToViewPager(@NonNull ViewPager pager) {
+        if (viewPager != pager) {
+            if (viewPager != null) {
+                viewPager.removeOnPageChangeListener(this);
+                viewPager.removeOnAdapterChangeListener(this);
+                if (viewPager.getAdapter() != null) {
+                    viewPager.getAdapter().unregisterDataSetObserver(dataSetObserver);
+                }
+            }
+
+            viewPager = pager;
+            viewPager.addOnPageChangeListener(this);
+            viewPager.addOnAdapterChangeListener(this);
+            if (viewPager.getAdapter() != null) {
+                viewPager.getAdapter().registerDataSetObserver(dataSetObserver);
+            }
+        }
+
+        scrollPosition = viewPager.getCurrentItem();
+        scrollOffset = 0;
+        updatePageCount();
+    }
+
+    /**
+     * Re-reads the page count form the adapter, and redraws
+     */
+    private void updatePageCount() {
+        PagerAdapter adapter = viewPager == null ? null : viewPager.getAdapter();
+        pageCount = adapter == null ? 0 : adapter.getCount();
+
+        if (scrollPosition >= pageCount) {
+            scrollPosition = Math.max(0, pageCount - 1);
+            scrollOffset = 0;
+        }
+
+        compactTextPosition = -1;
+        invalidate();
+    }
+
+    @Override
+    public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+        scrollPosition = position;
+        scrollOffset = positionOffset;
+        invalidate();
+    }
+
+    @Override
+    public void onPageSelected(int position) { /*onPageScrolled takes care of everything*/ }
+
+    @Override
+    public void onPageScrollStateChanged(int state) { /*Same here*/ }
+
+    @Override
+    public void onAdapterChanged(@NonNull ViewPager viewPager, @Nullable PagerAdapter oldAdapter, @Nullable PagerAdapter newAdapter) {
+        if (oldAdapter != null) {
+            oldAdapter.unregisterDataSetObserver(dataSetObserver);
+        }
+        if (newAdapter != null) {
+            newAdapter.registerDataSetObserver(dataSetObserver);
+        }
+        updatePageCount();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (pageCount < 2) {
+            return;
+        }
+
+        float centerY = getHeight() / 2.0f;
+
+        if (pageCount > MAX_DOTS) {
+            int shownPosition = scrollOffset < 0.5f ? scrollPosition : scrollPosition + 1;
+            if (shownPosition != compactTextPosition) {
+                formatCompactText(shownPosition);
+            }
+            canvas.drawText(compactText, 0, compactTextLength, getWidth() / 2.0f,
+                    centerY - (textPaint.descent() + textPaint.ascent()) / 2.0f, textPaint);
+            return;
+        }
+
+        float startX = (getWidth() - (pageCount - 1) * dotSpacing) / 2.0f;
+
+        for (int i = 0; i < pageCount; i++) {
+            canvas.drawCircle(startX + i * dotSpacing, centerY, dotRadius, dotPaint);
+        }
+
+        canvas.drawCircle(startX + (scrollPosition + scrollOffset) * dotSpacing, centerY, dotRadius, selectedDotPaint);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int desiredWidth = Math.round(MAX_DOTS * dotSpacing) + getPaddingLeft() + getPaddingRight(),
+            desiredHeight = Math.round(Math.max(dotRadius * 2, textPaint.getTextSize())) + getPaddingTop() + getPaddingBottom();
+
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec), resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    /**
+     * Writes "position / count" into the reused char buffer. This is only called when the shown page changes,
+     * and does not allocate anything.
+     *
+     * @param position The (0 based) position to show
+     */
+    private void formatCompactText(int position) {
+        compactTextPosition = position;
+        compactTextLength = 0;
+        appendInt(position + 1);
+        for (char c : SEPARATOR) {
+            compactText[compactTextLength++] = c;
+        }
+        appendInt(pageCount);
+    }
+
+    private void appendInt(int value) {
+        int start = compactTextLength;
+        do {
+            compactText[compactTextLength++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+
+        //The digits went in backwards
+        for (int i = start, j = compactTextLength - 1; i < j; i++, j--) {
+            char c = compactText[i];
+            compactText[i] = compactText[j];
+            compactText[j] = c;
+        }
+    }
+
+    /**
+     * Takes the colours from the context's theme, again if the context was swapped (see {@link ControlSheetPool})
+     */
+    void resolveColors() {
+        dotPaint.setColor(ContextCompat.getColor(getContext(), android.R.color.darker_gray));
+        selectedDotPaint.setColor(resolveAccentColor(getContext()));
+        textPaint.setColor(dotPaint.getColor());
+        invalidate();
+    }
+
+    /**
+     * Resolves the theme's accent colour for the selected dot, just like the old selector drawable did
+     *
+     * @param context The Context
+     * @return The accent colour, or dark grey if it cannot be resolved
+     */
+    private static int resolveAccentColor(Context context) {
+        TypedValue outValue = new TypedValue();
+        if (context.getTheme().resolveAttribute(R.attr.colorAccent, outValue, true)) {
+            return outValue.resourceId == 0 ? outValue.data : ContextCompat.getColor(context, outValue.resourceId);
+        }
+        return Color.DKGRAY;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import androidx.annotation.NonNull;
+import androidx.viewpager.widget.PagerAdapter;
+
+/**
+ * <p>Prepares pages ahead of a swipe. The pager keeps its offscreen pages alive, but when that's limited (low memory), the
+ * page after the one a swipe lands on is only inflated when the swipe is over, right when the user wants to keep going.</p>
+ *
+ * <p>As soon as a swipe picks up speed, the pages up to the first one that's not alive yet in that direction are handed to
+ * the {@link PagePreparationScheduler} (one more for fast swipes). When the direction reverses, they are taken back, and
+ * so are the pages already prepared for the other direction. At most {@link PagePrefetcher#MAX_PREFETCHED_PAGES} pages
+ * are ever asked for.</p>
+ */
+final class PagePrefetcher {
+
+    static final int MAX_PREFETCHED_PAGES = 2;
+
+    private final WrappingViewPager pager;
+    private final PagePreparationScheduler scheduler;
+    private final int[] requested = new int[MAX_PREFETCHED_PAGES]; // Positions asked for, for the current direction
+    private int requestedCount,
+                direction;                                         // -1 towards the first page, 1 towards the last, 0 for none
+
+    PagePrefetcher(@NonNull WrappingViewPager pager, @NonNull PagePreparationScheduler scheduler) {
+        this.pager = pager;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * The user is swiping
+     *
+     * @param direction Which way the pages are going: 1 towards the last page, -1 towards the first one
+     * @param fast Whether it's a fast swipe, which may well go further than one page
+     */
+    void onSwipe(int direction, boolean fast) {
+        if (direction != this.direction) {
+            cancel();
+            this.direction = direction;
+        }
+
+        PagerAdapter adapter = pager.getAdapter();
+        if (!(adapter instanceof SimplePagerAdapter)) {
+            return;
+        }
+
+        //The swipe lands on the next page, and then the pager wants the pages within its limit from there
+        int first = pager.getCurrentItem() + direction,
+            last = first + direction * (pager.getOffscreenPageLimit() + (fast ? 1 : 0));
+
+        for (int position = first; position != last + direction && requestedCount < MAX_PREFETCHED_PAGES; position += direction) {
+            if (position >= 0 && position < adapter.getCount()
+                    && !((SimplePagerAdapter) adapter).hasPage(pager, position) && !isRequested(position)) {
+                requested[requestedCount++] = position;
+                scheduler.prepare(position);
+            }
+        }
+    }
+
+    /**
+     * The pager has settled. Whatever was prepared and not used by now, is not going to be
+     */
+    void onIdle() {
+        cancel();
+        direction = 0;
+    }
+
+    /**
+     * Takes back every page asked for, and drops the ones already prepared
+     */
+    void cancel() {
+        PagerAdapter adapter = pager.getAdapter();
+
+        for (int i = 0; i < requestedCount; i++) {
+            scheduler.cancel(requested[i]);
+            if (adapter instanceof SimplePagerAdapter) {
+                ((SimplePagerAdapter) adapter).discardPreparedPage(requested[i]);
+            }
+        }
+        requestedCount = 0;
+    }
+
+    private boolean isRequested(int position) {
+        for (int i = 0; i < requestedCount; i++) {
+            if (requested[i] == position) return true;
+        }
+        return false;
+    }
+}
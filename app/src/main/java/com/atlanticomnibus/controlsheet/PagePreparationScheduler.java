@@ -0,0 +1,262 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+import android.view.Choreographer;
+import android.view.Display;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.viewpager.widget.PagerAdapter;
+
+/**
+ * <p>Prepares pages (inflates, measures and lays them out, see {@link SimplePagerAdapter#preparePage}) on the main thread,
+ * in the time each frame has left, instead of all of them at once.</p>
+ *
+ * <p>Work starts right after a frame has been drawn, and goes on page by page while the next page (judging by what it took
+ * last time) still fits before the frame's deadline. Then it yields until the next frame. A single page can't be split, so
+ * a page that is too costly for any frame is prepared alone, at the start of an otherwise quiet frame.</p>
+ *
+ * <p>The current page goes first, then its neighbours, then the rest, the most visited ones first. Visits are counted for
+ * this session, or taken from a {@link PageUsageHistory}, when there is one.</p>
+ */
+final class PagePreparationScheduler implements Choreographer.FrameCallback {
+
+    private static final long DEFAULT_FRAME_NANOS   = 16666667L, // 60 frames per second, if the display doesn't tell
+                              DEADLINE_MARGIN_NANOS =  2000000L; // Leave this much of every frame alone
+
+    private final WrappingViewPager pager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SparseLongArray prepareNanos = new SparseLongArray(); // Layout id -> what preparing it took last time
+    private final SparseIntArray visits = new SparseIntArray();         // Layout id -> how many times it became current
+
+    private int[] pending = new int[4]; // Positions still to be prepared
+    private int pendingCount;
+    private long frameStartNanos,
+                 frameNanos = DEFAULT_FRAME_NANOS;
+    private boolean frameScheduled;
+    private Runnable onAllPrepared;
+    private PageUsageHistory usageHistory;
+
+    private final Runnable chunk = new Runnable() {
+        @Override
+        public void run() {
+            prepareChunk();
+        }
+    };
+
+    PagePreparationScheduler(@NonNull WrappingViewPager pager) {
+        this.pager = pager;
+    }
+
+    /**
+     * @param onAllPrepared Runs whenever there's nothing left to prepare, or {@code null}
+     */
+    void setOnAllPrepared(@Nullable Runnable onAllPrepared) {
+        this.onAllPrepared = onAllPrepared;
+    }
+
+    /**
+     * @param usageHistory Where visits are counted (across launches), or {@code null} to count them for this session only
+     */
+    void setUsageHistory(@Nullable PageUsageHistory usageHistory) {
+        this.usageHistory = usageHistory;
+    }
+
+    /**
+     * Queues a page to be prepared, unless it's already queued
+     *
+     * @param position The position of the page
+     */
+    void prepare(int position) {
+        for (int i = 0; i < pendingCount; i++) {
+            if (pending[i] == position) return;
+        }
+        if (pendingCount == pending.length) {
+            int[] grown = new int[pending.length * 2];
+            System.arraycopy(pending, 0, grown, 0, pendingCount);
+            pending = grown;
+        }
+        pending[pendingCount++] = position;
+        scheduleFrame();
+    }
+
+    /**
+     * Queues every page of the adapter
+     */
+    void prepareAll() {
+        PagerAdapter adapter = pager.getAdapter();
+        for (int position = 0, count = adapter == null ? 0 : adapter.getCount(); position < count; position++) {
+            prepare(position);
+        }
+    }
+
+    /**
+     * Takes a page off the queue, if it's not prepared yet
+     *
+     * @param position The position of the page
+     */
+    void cancel(int position) {
+        for (int i = 0; i < pendingCount; i++) {
+            if (pending[i] == position) {
+                removeAt(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the whole queue
+     */
+    void clear() {
+        pendingCount = 0;
+        handler.removeCallbacks(chunk);
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Counts a visit to the page, so it's prepared earlier next time
+     *
+     * @param position The position of the page that became current
+     */
+    void recordVisit(int position) {
+        PagerAdapter adapter = pager.getAdapter();
+        if (usageHistory == null && adapter instanceof SimplePagerAdapter && position < adapter.getCount()) {
+            int layoutId = ((SimplePagerAdapter) adapter).getLayoutId(position);
+            visits.put(layoutId, visits.get(layoutId) + 1);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        frameStartNanos = frameTimeNanos;
+        //Runs after this frame has been laid out and drawn
+        handler.post(chunk);
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+
+            Display display = pager.getDisplay();
+            if (display != null && display.getRefreshRate() > 0) {
+                frameNanos = (long) (1000000000L / display.getRefreshRate());
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Prepares pages, the most wanted first, until the next one would not fit in what's left of the frame
+     */
+    private void prepareChunk() {
+        PagerAdapter pagerAdapter = pager.getAdapter();
+        if (!(pagerAdapter instanceof SimplePagerAdapter)) {
+            pendingCount = 0;
+            return;
+        }
+        SimplePagerAdapter adapter = (SimplePagerAdapter) pagerAdapter;
+
+        long deadline = frameStartNanos + frameNanos - DEADLINE_MARGIN_NANOS;
+        boolean firstInFrame = true;
+
+        while (pendingCount > 0) {
+            int index = nextIndex(pager.getCurrentItem(), adapter),
+                position = pending[index];
+
+            if (position >= adapter.getCount() || adapter.hasPage(pager, position)) {
+                removeAt(index);
+                continue;
+            }
+
+            int layoutId = adapter.getLayoutId(position);
+            long start = System.nanoTime(),
+                 estimate = prepareNanos.get(layoutId, frameNanos / 4);
+
+            if (start + estimate > deadline && !(firstInFrame && start < frameStartNanos + frameNanos / 2)) {
+                break;
+            }
+
+            removeAt(index);
+            adapter.preparePage(pager, position);
+            prepareNanos.put(layoutId, System.nanoTime() - start);
+            firstInFrame = false;
+        }
+
+        if (pendingCount > 0) {
+            scheduleFrame();
+        } else if (onAllPrepared != null) {
+            onAllPrepared.run();
+        }
+    }
+
+    /**
+     * Picks the most wanted page: the current one, then its neighbours, then the most visited, then the closest one
+     *
+     * @param current The pager's current position
+     * @param adapter The pager's adapter
+     * @return Its index in the queue
+     */
+    private int nextIndex(int current, SimplePagerAdapter adapter) {
+        int best = 0;
+
+        for (int i = 1; i < pendingCount; i++) {
+            if (compare(pending[i], pending[best], current, adapter) < 0) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int compare(int position, int other, int current, SimplePagerAdapter adapter) {
+        int distance = Math.abs(position - current),
+            otherDistance = Math.abs(other - current);
+
+        if (distance <= 1 || otherDistance <= 1) {
+            return distance - otherDistance;
+        }
+
+        int byUse = Float.compare(scoreOf(other, adapter), scoreOf(position, adapter));
+        return byUse != 0 ? byUse : distance - otherDistance;
+    }
+
+    private float scoreOf(int position, SimplePagerAdapter adapter) {
+        if (position >= adapter.getCount()) {
+            return 0f;
+        }
+        int layoutId = adapter.getLayoutId(position);
+        return usageHistory != null ? usageHistory.getScore(layoutId) : visits.get(layoutId);
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(pending, index + 1, pending, index, --pendingCount - index);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.MutableContextWrapper;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+/**
+ * <p>Keeps inflated pages across a configuration change (e.g. a rotation), in the activity's {@link ViewModel} store, so the
+ * recreated sheet can take them over instead of inflating them again.</p>
+ *
+ * <p>Retained pages are inflated on a {@link MutableContextWrapper}. While they are waiting, it points at the application
+ * context (so the old activity can go), and the new sheet points it at its own context when it takes them.</p>
+ *
+ * <p>Pages are only handed over if the change can't have changed them: only changes in {@link PageRetainer#SAFE_CHANGES} are
+ * accepted, and a change in {@link PageRetainer#SCREEN_CHANGES} (e.g. a rotation) only for the layouts the app declared
+ * screen independent. Checking the layout file alone isn't enough there: the {@code @dimen}, {@code @string} or
+ * {@code @style} it references may have {@code -land} variants of their own. Even then, a page goes only if its layout
+ * resolves to the very same file (no {@code layout-land} for example), and the layout doesn't vary with any of the changes.
+ * Otherwise they are dropped, and simply inflated again.</p>
+ *
+ * <p>Note that the views of a retained page keep the {@link Resources} they were built with (views read them through their
+ * context only while they're being built), so nothing on them is resolved again for the new configuration.</p>
+ */
+final class PageRetainer extends ViewModel {
+
+    static final int SAFE_CHANGES = ActivityInfo.CONFIG_KEYBOARD | ActivityInfo.CONFIG_KEYBOARD_HIDDEN | ActivityInfo.CONFIG_NAVIGATION;
+
+    static final int SCREEN_CHANGES = ActivityInfo.CONFIG_ORIENTATION | ActivityInfo.CONFIG_SCREEN_SIZE
+            | ActivityInfo.CONFIG_SMALLEST_SCREEN_SIZE | ActivityInfo.CONFIG_SCREEN_LAYOUT;
+
+    /**
+     * One sheet's pages, as they were left
+     */
+    private static final class RetainedPages {
+        final Configuration configuration;
+        final SparseArray<View> pages;       // Layout id -> page
+        final SparseArray<String> files;     // Layout id -> the file it was inflated from
+
+        RetainedPages(Configuration configuration, SparseArray<View> pages, SparseArray<String> files) {
+            this.configuration = configuration;
+            this.pages = pages;
+            this.files = files;
+        }
+    }
+
+    private static final ViewModelProvider.Factory FACTORY = new ViewModelProvider.Factory() {
+        @SuppressWarnings("unchecked")
+        @NonNull
+        @Override
+        public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
+            return (T) new PageRetainer();
+        }
+    };
+
+    private final SparseArray<RetainedPages> sheets = new SparseArray<>(); // Sheet id -> its pages
+
+    /**
+     * Finds the retainer of the activity the context belongs to
+     *
+     * @param context A context of the activity
+     * @return The retainer, or {@code null} if the activity has no {@link ViewModel} store
+     */
+    @Nullable
+    static PageRetainer of(@NonNull Context context) {
+        Activity activity = findActivity(context);
+        if (!(activity instanceof ViewModelStoreOwner)) {
+            return null;
+        }
+        return new ViewModelProvider((ViewModelStoreOwner) activity, FACTORY).get(PageRetainer.class);
+    }
+
+    /**
+     * @param context A context of the activity
+     * @return Whether the activity is being destroyed just to be recreated with a new configuration
+     */
+    static boolean isChangingConfigurations(@NonNull Context context) {
+        Activity activity = findActivity(context);
+        return activity != null && activity.isChangingConfigurations();
+    }
+
+    /**
+     * Keeps a sheet's pages until the recreated sheet takes them
+     *
+     * @param sheetId The id of the sheet
+     * @param context The context of the sheet
+     * @param pages The pages, by layout id, already removed from the pager
+     */
+    void retain(int sheetId, @NonNull Context context, @NonNull SparseArray<View> pages) {
+        Resources resources = context.getResources();
+        SparseArray<String> files = new SparseArray<>(pages.size());
+
+        for (int i = 0; i < pages.size(); i++) {
+            files.put(pages.keyAt(i), fileOf(resources, pages.keyAt(i)));
+            rebase(pages.valueAt(i), context.getApplicationContext());
+        }
+        sheets.put(sheetId, new RetainedPages(new Configuration(resources.getConfiguration()), pages, files));
+    }
+
+    /**
+     * Hands the pages kept for a sheet over to its new incarnation, if they're still good for the new configuration
+     *
+     * @param sheetId The id of the sheet
+     * @param context The context of the new sheet
+     * @param screenIndependentLayouts The layouts the app declared screen independent, or {@code null}
+     * @return The pages, by layout id, or {@code null} if there are none
+     */
+    @Nullable
+    SparseArray<View> take(int sheetId, @NonNull Context context, @Nullable int[] screenIndependentLayouts) {
+        RetainedPages retained = sheets.get(sheetId);
+        if (retained == null) {
+            return null;
+        }
+        sheets.remove(sheetId);
+
+        Resources resources = context.getResources();
+        int changes = resources.getConfiguration().diff(retained.configuration);
+        if ((changes & ~(SAFE_CHANGES | SCREEN_CHANGES)) != 0) {
+            return null;
+        }
+
+        SparseArray<View> pages = new SparseArray<>(retained.pages.size());
+        TypedValue value = new TypedValue();
+
+        for (int i = 0; i < retained.pages.size(); i++) {
+            int layoutId = retained.pages.keyAt(i);
+            int acceptedChanges = isListed(layoutId, screenIndependentLayouts) ? SAFE_CHANGES | SCREEN_CHANGES : SAFE_CHANGES;
+            if ((changes & ~acceptedChanges) != 0) {
+                continue;
+            }
+
+            String file = fileOf(resources, layoutId);
+            if (file != null && file.equals(retained.files.get(layoutId)) && (changingConfigurationsOf(resources, layoutId, value) & changes) == 0) {
+                View page = retained.pages.valueAt(i);
+                rebase(page, context);
+                pages.put(layoutId, page);
+            }
+        }
+        return pages.size() > 0 ? pages : null;
+    }
+
+    @Override
+    protected void onCleared() {
+        //The activity is gone for good
+        sheets.clear();
+    }
+
+    private static boolean isListed(int layoutId, @Nullable int[] layoutIds) {
+        if (layoutIds != null) {
+            for (int id : layoutIds) {
+                if (id == layoutId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static String fileOf(Resources resources, int layoutId) {
+        TypedValue value = new TypedValue();
+        try {
+            resources.getValue(layoutId, value, true);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+        return value.string == null ? null : value.string.toString();
+    }
+
+    private static int changingConfigurationsOf(Resources resources, int layoutId, TypedValue value) {
+        try {
+            resources.getValue(layoutId, value, true);
+            return value.changingConfigurations;
+        } catch (Resources.NotFoundException e) {
+            return ~0;
+        }
+    }
+
+    /**
+     * Points the page's (swappable) context at a new base
+     *
+     * @param page The page
+     * @param base The new base context
+     */
+    private static void rebase(View page, Context base) {
+        if (page.getContext() instanceof MutableContextWrapper) {
+            ((MutableContextWrapper) page.getContext()).setBaseContext(base);
+        }
+    }
+
+    @Nullable
+    private static Activity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+}
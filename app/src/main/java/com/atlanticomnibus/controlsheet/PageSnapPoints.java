@@ -0,0 +1,179 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.animation.ValueAnimator;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
+
+import com.google.android.material.bottomsheet.BottomSheetBehavior;
+
+/**
+ * <p>Moves the sheet's snap points to fit the current page. The pager stays as tall as its tallest page, so a page change never
+ * lays the sheet out again. Instead, the behaviour stops expanding where the current page ends (the rest of the sheet is
+ * simply below the screen), and the half expanded stop is halfway there.</p>
+ *
+ * <p>Page heights come from the pager's cache. When the current page changes while the sheet is expanded, the sheet's top is
+ * offset to the new stop frame by frame, which is no more than moving its display list around.</p>
+ */
+final class PageSnapPoints {
+
+    private static final int SNAP_ANIMATION_DURATION = 200;
+
+    private final View sheet;
+    private BottomSheetBehavior behavior;   // Only there while snapping to pages is on
+    private View indicator;                 // Slid up, so it stays at the visible bottom of the sheet
+    private ValueAnimator animator;
+    private int expandedOffset = -1;        // The last expanded offset handed to the behaviour
+
+    PageSnapPoints(@NonNull View sheet) {
+        this.sheet = sheet;
+    }
+
+    /**
+     * Takes over the behaviour's snap points. It will no longer fit the whole sheet, but stop where it's told to
+     *
+     * @param behavior The sheet's behaviour
+     */
+    void attach(@NonNull BottomSheetBehavior behavior) {
+        if (this.behavior != behavior) {
+            detach();
+            this.behavior = behavior;
+            behavior.setFitToContents(false);
+        }
+    }
+
+    /**
+     * Hands the snap points back to the behaviour, which will fit the whole sheet again
+     */
+    void detach() {
+        cancel();
+        if (behavior != null) {
+            behavior.setFitToContents(true);
+            behavior = null;
+        }
+        if (indicator != null) {
+            indicator.setTranslationY(0);
+        }
+        expandedOffset = -1;
+    }
+
+    boolean isAttached() {
+        return behavior != null;
+    }
+
+    void setIndicator(@Nullable View indicator) {
+        this.indicator = indicator;
+    }
+
+    /**
+     * Stops a running snap animation, where it is. E.g. the user grabbed the sheet
+     */
+    void cancel() {
+        if (animator != null) {
+            animator.cancel();
+            animator = null;
+        }
+    }
+
+    /**
+     * Works out the snap points for the current page, and hands them to the behaviour. Called after every layout of the
+     * sheet, and whenever the current page changes
+     *
+     * @param pager The pager, if it exists yet
+     * @param position The current position of the pager
+     * @param move Whether an expanded sheet should move to the new stop right now (not while it's being laid out)
+     */
+    void update(@Nullable WrappingViewPager pager, int position, boolean move) {
+        if (behavior == null || !ViewCompat.isLaidOut(sheet) || !(sheet.getParent() instanceof View)) {
+            return;
+        }
+
+        int parentHeight = ((View) sheet.getParent()).getHeight(),
+            sheetHeight = sheet.getHeight(),
+            peekHeight = behavior.getPeekHeight(),
+            fitHeight = sheetHeight;
+
+        if (pager != null && pager.getVisibility() != View.GONE) {
+            int pageHeight = pager.getCachedPageHeight(position);
+            if (pageHeight >= 0) {
+                fitHeight = Math.min(sheetHeight, sheetHeight - pager.getHeight() + pageHeight);
+            }
+        }
+        fitHeight = Math.max(fitHeight, peekHeight + 1); // Expanded has to stay above collapsed
+
+        int offset = Math.max(0, parentHeight - fitHeight),
+            overflow = Math.max(0, offset + sheetHeight - parentHeight);
+
+        if (offset != expandedOffset) {
+            expandedOffset = offset;
+            behavior.setExpandedOffset(offset);
+
+            float halfRatio = (peekHeight + (fitHeight - peekHeight) / 2f) / parentHeight;
+            if (halfRatio > 0 && halfRatio < 1) {
+                behavior.setHalfExpandedRatio(halfRatio);
+            }
+
+            if (move && behavior.getState() == BottomSheetBehavior.STATE_EXPANDED) {
+                snapTo(offset, overflow);
+                return;
+            }
+        }
+
+        if (indicator != null && (animator == null || !animator.isRunning())) {
+            indicator.setTranslationY(-overflow);
+        }
+    }
+
+    /**
+     * Moves the expanded sheet to its new stop, by offsetting its top on every frame. The behaviour would put it in the same
+     * place on its next layout, so there's nothing to undo afterwards
+     *
+     * @param top The new top of the sheet
+     * @param overflow How much of the sheet will be below its parent
+     */
+    private void snapTo(int top, int overflow) {
+        cancel();
+
+        if (indicator != null) {
+            indicator.animate().translationY(-overflow).setDuration(SNAP_ANIMATION_DURATION);
+        }
+
+        animator = ValueAnimator.ofInt(sheet.getTop(), top);
+        animator.setDuration(SNAP_ANIMATION_DURATION);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                if (behavior == null || behavior.getState() != BottomSheetBehavior.STATE_EXPANDED) {
+                    animation.cancel();
+                    return;
+                }
+                ViewCompat.offsetTopAndBottom(sheet, (Integer) animation.getAnimatedValue() - sheet.getTop());
+            }
+        });
+        animator.start();
+    }
+}
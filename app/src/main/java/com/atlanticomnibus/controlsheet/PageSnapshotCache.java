@@ -0,0 +1,187 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Keeps bitmap snapshots of the pager's pages, within a memory budget (in bytes), for {@link PageFrame}s to draw while
+ * the pages are not interactive.</p>
+ *
+ * <p>The cache is "frozen" while the pager is being swiped or the sheet is being dragged or settling. While frozen, frames
+ * draw their snapshot (if they have one). Snapshots are (re-)captured one page per idle pass of the main thread, never
+ * during motion. When the budget is exceeded, the least recently used snapshots go, and their pages simply draw live.</p>
+ */
+class PageSnapshotCache {
+
+    private final LruCache<PageFrame, Bitmap> snapshots;
+    private final ArrayList<PageFrame> frames = new ArrayList<>(),
+                                       pendingCaptures = new ArrayList<>();
+    private final Canvas captureCanvas = new Canvas();
+
+    private boolean pagerMoving,
+                    sheetMoving,
+                    idleHandlerQueued;
+
+    private final MessageQueue.IdleHandler capturer = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (!isFrozen() && !pendingCaptures.isEmpty()) {
+                capture(pendingCaptures.remove(pendingCaptures.size() - 1));
+            }
+
+            idleHandlerQueued = !isFrozen() && !pendingCaptures.isEmpty();
+            return idleHandlerQueued;
+        }
+    };
+
+    PageSnapshotCache(int budgetBytes) {
+        snapshots = new LruCache<PageFrame, Bitmap>(Math.max(1, budgetBytes)) {
+            @Override
+            protected int sizeOf(@NonNull PageFrame key, @NonNull Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Changes the memory budget, dropping snapshots if needed
+     * @param budgetBytes the new budget in bytes
+     */
+    void setBudget(int budgetBytes) {
+        snapshots.resize(Math.max(1, budgetBytes));
+    }
+
+    /**
+     * Drops every snapshot. The pages will draw live until they are captured again
+     */
+    void clear() {
+        snapshots.evictAll();
+        pendingCaptures.clear();
+    }
+
+    boolean isFrozen() {
+        return pagerMoving || sheetMoving;
+    }
+
+    void setPagerMoving(boolean moving) {
+        pagerMoving = moving;
+        onFrozenChanged();
+    }
+
+    void setSheetMoving(boolean moving) {
+        sheetMoving = moving;
+        onFrozenChanged();
+    }
+
+    @Nullable
+    Bitmap get(PageFrame frame) {
+        return snapshots.get(frame);
+    }
+
+    void register(PageFrame frame) {
+        if (!frames.contains(frame)) {
+            frames.add(frame);
+        }
+    }
+
+    void unregister(PageFrame frame) {
+        frames.remove(frame);
+        snapshots.remove(frame);
+        pendingCaptures.remove(frame);
+    }
+
+    /**
+     * Queues a frame to be captured at the next idle pass, or the first one after motion stops, if the cache is frozen
+     * @param frame The frame that needs a fresh snapshot
+     */
+    void scheduleCapture(PageFrame frame) {
+        if (!pendingCaptures.contains(frame)) {
+            pendingCaptures.add(frame);
+        }
+        queueIdleHandler();
+    }
+
+    /**
+     * When motion stops, pages that changed while they were showing their snapshot need a live redraw, and a new snapshot.
+     * Captures that were queued (or left over) while frozen are picked up again
+     */
+    private void onFrozenChanged() {
+        if (!isFrozen()) {
+            for (int i = 0; i < frames.size(); i++) {
+                PageFrame frame = frames.get(i);
+                if (frame.isSnapshotDirty()) {
+                    frame.invalidate();
+                }
+            }
+
+            if (!pendingCaptures.isEmpty()) {
+                queueIdleHandler();
+            }
+        }
+    }
+
+    private void queueIdleHandler() {
+        if (!idleHandlerQueued && !isFrozen()) {
+            idleHandlerQueued = true;
+            Looper.myQueue().addIdleHandler(capturer);
+        }
+    }
+
+    /**
+     * Draws the frame into a bitmap, reusing its previous snapshot when the size hasn't changed
+     * @param frame The frame to capture
+     */
+    private void capture(PageFrame frame) {
+        int width = frame.getWidth(),
+            height = frame.getHeight();
+
+        if (width == 0 || height == 0 || !frame.isAttachedToWindow()) {
+            return;
+        }
+
+        Bitmap bitmap = snapshots.get(frame);
+
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            try {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                //Not worth dying for, the page will just draw live
+                snapshots.evictAll();
+                return;
+            }
+        }
+
+        frame.drawSnapshot(bitmap, captureCanvas);
+        snapshots.put(frame, bitmap);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.viewpager.widget.ViewPager;
+
+/**
+ * <p>The built-in page transitions of the sheet's {@link ViewPager}. Only alpha, translation and scale are touched, which
+ * are all applied by the render thread, so a page on a hardware layer is never redrawn while it's being transformed.
+ * The pager itself puts the pages on layers when a swipe starts, and takes them off when it goes idle.</p>
+ *
+ * <p>Pages that are a whole page (or more) away from the current one are always left untransformed. They are out of sight
+ * anyway, and a see-through page stacked on the current one would still get its touches.</p>
+ */
+class PageTransitionTransformer implements ViewPager.PageTransformer {
+
+    private static final float MIN_DEPTH_SCALE      = 0.75f, // How small a page gets when it sinks in
+                               MIN_SLIDE_OVER_ALPHA = 0.5f,  // How much a page fades while the next one slides over it
+                               MIN_SLIDE_OVER_SCALE = 0.9f;  // How small it gets meanwhile
+
+    private final int style;
+
+    PageTransitionTransformer(int style) {
+        this.style = style;
+    }
+
+    /**
+     * The order the pages need to be drawn in: with depth, the page sinking in is under the other one, with slide-over,
+     * it's the other way around
+     *
+     * @return Whether the pager should draw pages in reverse order
+     */
+    boolean isReverseDrawingOrder() {
+        return style == ControlSheet.TRANSITION_DEPTH;
+    }
+
+    @Override
+    public void transformPage(@NonNull View page, float position) {
+        if (position <= -1 || position >= 1 || style == ControlSheet.TRANSITION_NONE) {
+            reset(page);
+            return;
+        }
+
+        float offset = Math.abs(position);
+
+        switch (style) {
+            case ControlSheet.TRANSITION_DEPTH:
+                if (position <= 0) {
+                    reset(page);
+                } else {
+                    float scale = MIN_DEPTH_SCALE + (1 - MIN_DEPTH_SCALE) * (1 - offset);
+                    page.setAlpha(1 - offset);
+                    page.setTranslationX(page.getWidth() * -position);
+                    page.setScaleX(scale);
+                    page.setScaleY(scale);
+                }
+                break;
+            case ControlSheet.TRANSITION_FADE:
+                page.setAlpha(1 - offset);
+                page.setTranslationX(page.getWidth() * -position);
+                page.setScaleX(1);
+                page.setScaleY(1);
+                break;
+            case ControlSheet.TRANSITION_SLIDE_OVER:
+                if (position >= 0) {
+                    reset(page);
+                } else {
+                    float scale = MIN_SLIDE_OVER_SCALE + (1 - MIN_SLIDE_OVER_SCALE) * (1 - offset);
+                    page.setAlpha(MIN_SLIDE_OVER_ALPHA + (1 - MIN_SLIDE_OVER_ALPHA) * (1 - offset));
+                    page.setTranslationX(page.getWidth() * -position);
+                    page.setScaleX(scale);
+                    page.setScaleY(scale);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Takes every transformation off a page
+     *
+     * @param page The page
+     */
+    static void reset(@NonNull View page) {
+        page.setAlpha(1);
+        page.setTranslationX(0);
+        page.setScaleX(1);
+        page.setScaleY(1);
+    }
+}
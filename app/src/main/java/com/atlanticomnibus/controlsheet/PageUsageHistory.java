@@ -0,0 +1,227 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Remembers how often, and how lately each page of a sheet was looked at, across app launches. It's kept in
+ * {@link SharedPreferences}, under the sheet's id and the layout's resource entry name (ids can change between builds,
+ * names don't), two small entries per page.</p>
+ *
+ * <p>A page's score is its number of visits, halved for every {@link PageUsageHistory#HALF_LIFE_MILLIS} since the last
+ * one. Visits are counted in memory, and written out (asynchronously) on {@link PageUsageHistory#flush()}.</p>
+ *
+ * <p>The stored history is read on a background thread, so the main thread never waits for the disk. Until it's there
+ * (see {@link PageUsageHistory#isLoaded()}), scores only count this session's visits, which are added to the stored ones
+ * once they arrive.</p>
+ */
+final class PageUsageHistory {
+
+    private static final String PREFERENCES_NAME = "com.atlanticomnibus.controlsheet.page_usage",
+                                VISITS_SUFFIX    = ".visits",
+                                LAST_SUFFIX      = ".last";
+
+    private static final long HALF_LIFE_MILLIS = 14 * 24 * 60 * 60 * 1000L; // A page not seen for two weeks counts half
+
+    /**
+     * What we know about one page
+     */
+    private static final class Usage {
+        int visits;
+        long lastVisitMillis;
+        boolean dirty;
+
+        void add(int storedVisits, long storedLastVisitMillis) {
+            visits += storedVisits;
+            lastVisitMillis = Math.max(lastVisitMillis, storedLastVisitMillis);
+        }
+    }
+
+    private final String sheetId;
+    private final Resources resources;
+    private final SharedPreferences preferences;
+    private final SparseArray<Usage> usages = new SparseArray<>(); // Layout id -> its usage, looked up on first use
+    private Map<String, ?> stored;                                 // This sheet's entries, once they're read
+    private boolean flushPending;                                  // Flushed before the entries were read, done once they are
+
+    /**
+     * Starts reading the stored history in the background
+     *
+     * @param context Any context
+     * @param sheetId The id the history is kept under
+     */
+    PageUsageHistory(@NonNull Context context, @NonNull String sheetId) {
+        this.sheetId = sheetId;
+        this.resources = context.getResources();
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        final String prefix = sheetId + '/';
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                //getAll() waits for the file, here that's fine
+                final Map<String, Object> entries = new HashMap<>();
+                for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                    if (entry.getKey().startsWith(prefix)) {
+                        entries.put(entry.getKey(), entry.getValue());
+                    }
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(entries);
+                    }
+                });
+            }
+        });
+    }
+
+    @NonNull
+    String getSheetId() {
+        return sheetId;
+    }
+
+    /**
+     * @return Whether the stored history has been read, and scores include it
+     */
+    boolean isLoaded() {
+        return stored != null;
+    }
+
+    /**
+     * Counts a visit to a page
+     *
+     * @param layoutId The page's layout id
+     */
+    void recordVisit(int layoutId) {
+        Usage usage = usageOf(layoutId);
+        usage.visits++;
+        usage.lastVisitMillis = System.currentTimeMillis();
+        usage.dirty = true;
+    }
+
+    /**
+     * @param layoutId The page's layout id
+     * @return How much the page is used, 0 if it never was
+     */
+    float getScore(int layoutId) {
+        Usage usage = usageOf(layoutId);
+        if (usage.visits == 0) {
+            return 0f;
+        }
+        long age = Math.max(0, System.currentTimeMillis() - usage.lastVisitMillis);
+        return (float) (usage.visits * Math.pow(0.5, (double) age / HALF_LIFE_MILLIS));
+    }
+
+    /**
+     * Writes out the visits counted since the last flush, without waiting for the disk. Before the stored history is
+     * read, that would mean waiting for it, so it's done as soon as it's there instead
+     */
+    void flush() {
+        if (stored == null) {
+            flushPending = true;
+            return;
+        }
+
+        SharedPreferences.Editor editor = null;
+
+        for (int i = 0; i < usages.size(); i++) {
+            Usage usage = usages.valueAt(i);
+            if (usage.dirty) {
+                if (editor == null) {
+                    editor = preferences.edit();
+                }
+                String key = keyOf(usages.keyAt(i));
+                editor.putInt(key + VISITS_SUFFIX, usage.visits)
+                      .putLong(key + LAST_SUFFIX, usage.lastVisitMillis);
+                usage.dirty = false;
+            }
+        }
+
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    private Usage usageOf(int layoutId) {
+        Usage usage = usages.get(layoutId);
+        if (usage == null) {
+            usage = new Usage();
+            if (stored != null) {
+                addStored(usage, layoutId);
+            }
+            usages.put(layoutId, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * The stored history is here: whatever was counted in the meantime is added to it
+     *
+     * @param entries This sheet's stored entries
+     */
+    private void onLoaded(Map<String, ?> entries) {
+        stored = entries;
+        for (int i = 0; i < usages.size(); i++) {
+            addStored(usages.valueAt(i), usages.keyAt(i));
+        }
+
+        if (flushPending) {
+            flushPending = false;
+            flush();
+        }
+    }
+
+    private void addStored(Usage usage, int layoutId) {
+        String key = keyOf(layoutId);
+        Object visits = stored.get(key + VISITS_SUFFIX),
+               last = stored.get(key + LAST_SUFFIX);
+
+        usage.add(visits instanceof Integer ? (Integer) visits : 0, last instanceof Long ? (Long) last : 0L);
+    }
+
+    private String keyOf(int layoutId) {
+        String name;
+        try {
+            name = resources.getResourceEntryName(layoutId);
+        } catch (Resources.NotFoundException e) {
+            name = String.valueOf(layoutId);
+        }
+        return sheetId + '/' + name;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.atlanticomnibus.controlsheet;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * <p>Takes changes to the sheet from any thread, and applies them on the main thread, all at once, on the next frame.</p>
+ *
+ * <p>Pending changes are kept by property and target (e.g. the same button's enabled state), so a change to something
+ * that's already waiting just overwrites its value in place. The first change after a frame asks for the next one (a single
+ * message to the main thread), the rest just wait. On the frame, what's waiting is applied in the order it came in (an
+ * overwritten change counts as coming in when its last write did). The sheet is then laid out and drawn once, in that
+ * same frame.</p>
+ */
+final class SheetMutationQueue implements Choreographer.FrameCallback {
+
+    static final int STRIP_BUTTON_ENABLED = 0, // index: the button's position, value: 1 for enabled, 0 for disabled
+                     STRIP_BUTTONS_COLOR  = 1, // value: the colour
+                     PAGE_LAYOUTS         = 2, // values: the layout ids
+                     SHEET_STATE          = 3, // value: the state
+                     PROPERTY_COUNT       = 4; // How many of the above there are
+
+    /**
+     * One pending change. Only touched while holding the queue's lock, until it's taken off for a frame
+     */
+    private static final class Mutation {
+        final int property,
+                  index;
+        int value,
+            lastWrite;  // Where its last write is in the write log
+        int[] values;
+
+        Mutation(int property, int index) {
+            this.property = property;
+            this.index = index;
+        }
+    }
+
+    private final ControlSheet sheet;
+    private final SparseArray<Mutation>[] pending;                  // Pending changes by property, then by index
+    private final ArrayList<Mutation> writes = new ArrayList<>();   // The writes since the last frame, in order (repeats in a row count once)
+    private final ArrayList<Mutation> batch = new ArrayList<>();    // Main thread only
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean frameRequested;
+
+    private final Runnable frameRequester = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(SheetMutationQueue.this);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    SheetMutationQueue(@NonNull ControlSheet sheet) {
+        this.sheet = sheet;
+        this.pending = new SparseArray[PROPERTY_COUNT];
+
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            pending[i] = new SparseArray<>();
+        }
+    }
+
+    /**
+     * Queues a change. Any thread
+     *
+     * @param property Which property changes
+     * @param index Which one of them, where it applies (e.g. a button's position), 0 otherwise
+     * @param value The new value, if it's a single int
+     * @param values The new values, if it's an array (not copied, so it should not be touched afterwards)
+     */
+    void post(int property, int index, int value, @Nullable int[] values) {
+        if (write(property, index, value, values)) {
+            mainHandler.post(frameRequester);
+        }
+    }
+
+    /**
+     * Drops every change that is still waiting, e.g. when the sheet goes back to a {@link ControlSheetPool}. Main thread
+     */
+    void clear() {
+        synchronized (this) {
+            discardPending();
+            frameRequested = false;
+        }
+        mainHandler.removeCallbacks(frameRequester);
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        takePending(batch);
+
+        for (int i = 0; i < batch.size(); i++) {
+            apply(batch.get(i));
+        }
+        batch.clear();
+    }
+
+    /**
+     * Records a change, overwriting the pending one for the same property and index, if there is one
+     *
+     * @return Whether a frame needs to be asked for
+     */
+    private synchronized boolean write(int property, int index, int value, @Nullable int[] values) {
+        Mutation mutation = pending[property].get(index);
+
+        if (mutation == null) {
+            mutation = new Mutation(property, index);
+            pending[property].put(index, mutation);
+        }
+        mutation.value = value;
+        mutation.values = values;
+
+        if (writes.isEmpty() || writes.get(writes.size() - 1) != mutation) {
+            mutation.lastWrite = writes.size();
+            writes.add(mutation);
+        }
+
+        if (frameRequested) {
+            return false;
+        }
+        frameRequested = true;
+        return true;
+    }
+
+    /**
+     * Takes every pending change, in the order of their last writes. Anything that comes in afterwards asks for the next frame
+     *
+     * @param into Where the changes go
+     */
+    private synchronized void takePending(ArrayList<Mutation> into) {
+        for (int i = 0; i < writes.size(); i++) {
+            Mutation mutation = writes.get(i);
+            if (mutation.lastWrite == i) {
+                into.add(mutation);
+            }
+        }
+
+        discardPending();
+        frameRequested = false;
+    }
+
+    private void discardPending() {
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            pending[i].clear();
+        }
+        writes.clear();
+    }
+
+    private void apply(Mutation mutation) {
+        switch (mutation.property) {
+            case STRIP_BUTTON_ENABLED:
+                sheet.setControlStripButtonEnabled(mutation.index, mutation.value != 0);
+                break;
+            case STRIP_BUTTONS_COLOR:
+                sheet.setControlStripButtonsColor(mutation.value);
+                break;
+            case PAGE_LAYOUTS:
+                sheet.replaceSheetPagerLayouts(mutation.values);
+                break;
+            case SHEET_STATE:
+                if (sheet.getBottomSheetBehavior() != null) {
+                    sheet.setControlSheetState(mutation.value);
+                } else {
+                    Log.e("ControlSheet", "Sheet is not attached to a CoordinatorLayout, its state can't be set");
+                }
+                break;
+        }
+    }
+}
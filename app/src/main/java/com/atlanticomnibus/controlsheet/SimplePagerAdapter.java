@@ -23,46 +23,282 @@
 package com.atlanticomnibus.controlsheet;
 
 import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Parcelable;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.viewpager.widget.PagerAdapter;
 
-import java.util.List;
-
 /**
  * A very simple adapter for the ViewPager
  */
 class SimplePagerAdapter extends PagerAdapter {
 
+    /**
+     * Lets the sheet know when pages come and go
+     */
+    interface PageListener {
+        void onPageInstantiated(int position, @NonNull View page);
+        void onPageDestroyed(int position, @NonNull View page);
+    }
+
     private final Context mContext;
-    private final List<Integer> layoutCollection;
+    private Context inflationContext;        // The context pages are inflated on, swappable when they may be retained
+    private final ControlSheetModel model;
+    private PageSnapshotCache snapshotCache; // When set, pages are wrapped into PageFrames, so they can be drawn from snapshots
+    private PageCostProfiler costProfiler;   // When set, pages are wrapped into PageFrames, so they can be timed
+    private PageListener pageListener;
+    private final SparseArray<SparseArray<Parcelable>> savedPageStates = new SparseArray<>(); // Destroyed pages' view states, by layout id
+    private final SparseArray<ViewGroup> preparedPages = new SparseArray<>(); // Pages inflated ahead of time, by position
+    private SparseArray<View> retainedPages;                                 // Pages taken over from before a configuration change, by layout id
 
-    public SimplePagerAdapter(Context context, List<Integer> layouts) {
+    public SimplePagerAdapter(Context context, ControlSheetModel model) {
         mContext=context;
-        layoutCollection = layouts;
+        inflationContext = context;
+        this.model = model;
+    }
+
+    /**
+     * Makes pages retainable across a configuration change: they are inflated on a {@link MutableContextWrapper}, so they can
+     * be moved over to a new context. Only affects pages instantiated after this call
+     *
+     * @param retainable Whether pages should be retainable
+     */
+    void setRetainable(boolean retainable) {
+        inflationContext = retainable ? new MutableContextWrapper(mContext) : mContext;
+    }
+
+    /**
+     * Gives the adapter pages kept from before a configuration change, to use instead of inflating them
+     *
+     * @param retainedPages The pages, by layout id, or {@code null}
+     */
+    void setRetainedPages(@Nullable SparseArray<View> retainedPages) {
+        this.retainedPages = retainedPages;
+    }
+
+    /**
+     * Takes every page the adapter has (in the pager, or prepared), out of the pager, so they can be retained. Pages in a
+     * {@link PageFrame} belong to the sheet's snapshot cache or profiler, those are left alone
+     *
+     * @param collection The pager
+     * @return The pages, by layout id
+     */
+    @NonNull
+    SparseArray<View> collectPages(@NonNull ViewGroup collection) {
+        SparseArray<View> pages = new SparseArray<>();
+
+        for (int i = collection.getChildCount() - 1; i >= 0; i--) {
+            View page = collection.getChildAt(i);
+            Object position = page.getTag(R.id.controlsheet_page_position);
+            if (position instanceof Integer && !(page instanceof PageFrame)) {
+                pages.put(layoutIdOf(page, (Integer) position), page);
+                collection.removeViewAt(i);
+            }
+        }
+
+        for (int i = 0; i < preparedPages.size(); i++) {
+            View page = preparedPages.valueAt(i);
+            if (!(page instanceof PageFrame)) {
+                pages.put(layoutIdOf(page, preparedPages.keyAt(i)), page);
+            }
+        }
+        preparedPages.clear();
+        return pages;
+    }
+
+    /**
+     * Sets (or clears) the snapshot cache. Only affects pages instantiated after this call
+     * @param snapshotCache The cache, or {@code null} to draw pages live all the time
+     */
+    void setSnapshotCache(@Nullable PageSnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+
+    /**
+     * Sets (or clears) the cost profiler. Only affects pages instantiated after this call
+     * @param costProfiler The profiler, or {@code null} to stop timing pages
+     */
+    void setCostProfiler(@Nullable PageCostProfiler costProfiler) {
+        this.costProfiler = costProfiler;
+    }
+
+    void setPageListener(@Nullable PageListener pageListener) {
+        this.pageListener = pageListener;
     }
 
     @Override
     public void destroyItem(@NonNull ViewGroup collection, int position, @NonNull Object view) {
+        //The page may be dropped to save memory, so it should look the same when it comes back
+        SparseArray<Parcelable> state = new SparseArray<>();
+        ((View) view).saveHierarchyState(state);
+        savedPageStates.put(layoutIdOf((View) view, position), state);
+
+        if (pageListener != null) {
+            pageListener.onPageDestroyed(position, (View) view);
+        }
         collection.removeView((View) view);
     }
 
     @NonNull
     @Override
     public Object instantiateItem(@NonNull ViewGroup collection, int position) {
-        LayoutInflater inflater = LayoutInflater.from(mContext);
-        ViewGroup layout;
-        layout=(ViewGroup) inflater.inflate(layoutCollection.get(position), collection, false);
+        ViewGroup layout = preparedPages.get(position);
+
+        if (layout != null) {
+            preparedPages.remove(position);
+        } else {
+            layout = createPage(collection, position);
+        }
         collection.addView(layout);
+
+        if (pageListener != null) {
+            pageListener.onPageInstantiated(position, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * <p>Inflates and lays out the page in the specified position ahead of time, unless it's already there. The page is
+     * handed to the pager when it gets instantiated, so a jump to a far away page doesn't have to wait for the inflation,
+     * and none of the pages in between need to be created.</p>
+     *
+     * @param collection The pager
+     * @param position The position of the page
+     */
+    void preparePage(@NonNull ViewGroup collection, int position) {
+        if (position < 0 || position >= getCount() || hasPage(collection, position)) {
+            return;
+        }
+
+        ViewGroup page = createPage(collection, position);
+        int width = collection.getWidth() - collection.getPaddingLeft() - collection.getPaddingRight();
+
+        if (width > 0) {
+            page.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+            page.layout(0, 0, page.getMeasuredWidth(), page.getMeasuredHeight());
+        }
+        preparedPages.put(position, page);
+    }
+
+    /**
+     * Tells whether the page in the specified position exists already, either in the pager, or prepared ahead of time
+     *
+     * @param collection The pager
+     * @param position The position of the page
+     * @return Whether there's nothing left to prepare
+     */
+    boolean hasPage(@NonNull ViewGroup collection, int position) {
+        if (preparedPages.get(position) != null) {
+            return true;
+        }
+
+        for (int i = 0; i < collection.getChildCount(); i++) {
+            if (Integer.valueOf(position).equals(collection.getChildAt(i).getTag(R.id.controlsheet_page_position))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops pages that were prepared, but never made it into the pager. They will simply be inflated again when needed
+     */
+    void discardPreparedPages() {
+        preparedPages.clear();
+    }
+
+    /**
+     * Drops a single prepared page, if it never made it into the pager
+     *
+     * @param position The position of the page
+     */
+    void discardPreparedPage(int position) {
+        preparedPages.remove(position);
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        preparedPages.clear(); // Positions may mean different pages now
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Inflates a page, restores its state if it had been destroyed before, and tags it with its position
+     *
+     * @param collection The pager, for the layout params
+     * @param position The position of the page
+     * @return The page, not yet added to the pager
+     */
+    private ViewGroup createPage(@NonNull ViewGroup collection, int position) {
+        int layoutId = model.getLayoutId(position);
+
+        View retained = retainedPages == null ? null : retainedPages.get(layoutId);
+        if (retained instanceof ViewGroup && snapshotCache == null && costProfiler == null) {
+            //Still the same page, state and all, only its position may have changed
+            retainedPages.remove(layoutId);
+            retained.setTag(R.id.controlsheet_page_position, position);
+            return (ViewGroup) retained;
+        }
+
+        LayoutInflater inflater = LayoutInflater.from(mContext).cloneInContext(inflationContext);
+        ViewGroup layout;
+
+        if (snapshotCache != null || costProfiler != null) {
+            long start = System.nanoTime();
+            PageFrame frame = new PageFrame(inflationContext, layoutId, snapshotCache);
+            inflater.inflate(layoutId, frame, true);
+            if (costProfiler != null) {
+                frame.profile(costProfiler, System.nanoTime() - start);
+            }
+            layout = frame;
+        } else {
+            layout = (ViewGroup) inflater.inflate(layoutId, collection, false);
+            layout.setTag(R.id.controlsheet_page_layout_id, layoutId);
+        }
+        SparseArray<Parcelable> state = savedPageStates.get(layoutId);
+        if (state != null) {
+            savedPageStates.remove(layoutId);
+            layout.restoreHierarchyState(state);
+        }
+
+        layout.setTag(R.id.controlsheet_page_position, position);
         return layout;
     }
 
+    /**
+     * Finds out which layout a page was inflated from. Pages are tagged with their layout id, since their position may have
+     * changed by the time they're destroyed.
+     *
+     * @param page The page
+     * @param position Its last known position, as a fallback
+     * @return The layout id
+     */
+    private int layoutIdOf(View page, int position) {
+        if (page instanceof PageFrame) {
+            return ((PageFrame) page).getLayoutId();
+        }
+        Object tag = page.getTag(R.id.controlsheet_page_layout_id);
+        return tag instanceof Integer ? (Integer) tag : model.getLayoutId(position);
+    }
+
+    /**
+     * @param position The position of a page
+     * @return The id of its layout
+     */
+    int getLayoutId(int position) {
+        return model.getLayoutId(position);
+    }
+
     @Override
     public int getCount() {
-        return layoutCollection.size();
+        return model.getPageCount();
     }
 
     @Override
@@ -0,0 +1,160 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Turns the behaviour's raw {@code onSlide()} calls (one per touch event, which can be several per frame) into at most
+ * one slide event per frame. Offsets are collected as they come, and only the latest one is delivered, on the next vsync.</p>
+ *
+ * <p>Listeners added with an {@link Executor} get the offsets on that executor instead of the main thread. Each of them has
+ * at most one task in flight: while a listener is still busy, new offsets just replace the pending one, and it gets the
+ * latest offset when it's done. A slow listener sees fewer events, but never holds anything up.</p>
+ */
+class SlideEventDispatcher implements Choreographer.FrameCallback {
+
+    private final ListenerRegistry<ControlSheetSlideListener> listeners;
+    private final ListenerRegistry<ExecutorDelivery> deliveries = new ListenerRegistry<>(new ExecutorDelivery[0]);
+
+    private float latestOffset,
+                  deliveredOffset = Float.NaN;
+
+    private boolean frameScheduled;
+
+    /**
+     * @param listeners The main thread listeners
+     */
+    SlideEventDispatcher(@NonNull ListenerRegistry<ControlSheetSlideListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Takes a raw slide offset from the behaviour. Main thread only
+     *
+     * @param slideOffset The offset
+     */
+    void onSlide(float slideOffset) {
+        latestOffset = slideOffset;
+
+        if (!frameScheduled && (!listeners.isEmpty() || !deliveries.isEmpty())) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+
+        if (latestOffset == deliveredOffset) {
+            return;
+        }
+        deliveredOffset = latestOffset;
+
+        for (ControlSheetSlideListener listener : listeners.get()) {
+            listener.onControlSheetSlide(deliveredOffset);
+        }
+
+        for (ExecutorDelivery delivery : deliveries.get()) {
+            delivery.offer(deliveredOffset);
+        }
+    }
+
+    void addExecutorListener(@NonNull ControlSheetSlideListener listener, @NonNull Executor executor) {
+        removeExecutorListener(listener);
+        deliveries.add(new ExecutorDelivery(listener, executor));
+    }
+
+    void removeExecutorListener(ControlSheetSlideListener listener) {
+        for (ExecutorDelivery delivery : deliveries.get()) {
+            if (delivery.listener == listener) {
+                deliveries.remove(delivery);
+            }
+        }
+    }
+
+    /**
+     * Drops a pending frame, if there is one. The next offset will be delivered, even if it's the same as the last one
+     */
+    void cancel() {
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        deliveredOffset = Float.NaN;
+    }
+
+    void clear() {
+        cancel();
+        deliveries.clear();
+    }
+
+
+    /**
+     * A listener with its executor, and the latest offset waiting for it
+     */
+    private static final class ExecutorDelivery implements Runnable {
+
+        private final ControlSheetSlideListener listener;
+        private final Executor executor;
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+
+        private volatile float pendingOffset;
+
+        ExecutorDelivery(ControlSheetSlideListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void offer(float slideOffset) {
+            pendingOffset = slideOffset;
+
+            if (inFlight.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    inFlight.set(false);
+                    Log.e("ControlSheet", "Slide listener's executor rejected the event", e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            float delivered;
+            do {
+                delivered = pendingOffset;
+                listener.onControlSheetSlide(delivered);
+                inFlight.set(false);
+                // Anything that came in meanwhile only replaced the pending offset, so pick it up, unless a new task already did
+            } while (pendingOffset != delivered && inFlight.compareAndSet(false, true));
+        }
+    }
+}
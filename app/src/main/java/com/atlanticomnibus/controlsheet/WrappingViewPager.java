@@ -22,11 +22,24 @@
 package com.atlanticomnibus.controlsheet;
 
 import android.content.Context;
+import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
 import android.util.AttributeSet;
+import android.util.SparseIntArray;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.core.view.ViewCompat;
+import androidx.viewpager.widget.PagerAdapter;
 import androidx.viewpager.widget.ViewPager;
 
 
@@ -38,35 +51,451 @@ import androidx.viewpager.widget.ViewPager;
  *
  * Since the author does not provide any license information, and the linked original solution no longer
  * exits, the MIT license applies, as stated above.
+ *
+ * On top of the original, page heights are cached (by position), so a page is only measured again when it asked for a layout,
+ * and the tallest height ever measured is kept even if that page is dropped. The pager can also fit the current page instead of
+ * the tallest one, and with a {@link HeightAnimationHost}, height changes are animated by translating the sheet (a render-thread
+ * property) rather than laying it out on every frame: growing lays out once at the start, shrinking once at the end.
+ *
+ * While the sheet is moving, invalidations coming from the pages can be held back, so busy page content doesn't make the
+ * (layered) sheet redraw on every frame. Whatever was held back is drawn in one go afterwards. The same goes for layout
+ * requests: with the layout frozen, they are collected, and the sheet is laid out once, when it has stopped.
+ *
+ * A suspended pager (the sheet is collapsed, so the pages can't be seen) goes further: it keeps its last measured size
+ * without measuring the pages, skips laying them out, and skips drawing while it's out of sight.
+ *
+ * Pages can be prepared ahead of time, within each frame's spare time, by its {@link PagePreparationScheduler}. Swipes are
+ * tracked, so that a {@link PagePrefetcher} can ask for the pages they are heading to.
  */
 public class WrappingViewPager extends ViewPager {
 
+    /**
+     * Whoever hosts the pager decides whether a height change should be animated right now
+     */
+    interface HeightAnimationHost {
+        /**
+         * @return The (bottom anchored) view to translate while the height changes, or {@code null} to just snap
+         */
+        @Nullable
+        View getHeightAnimationTarget();
+    }
+
+    private static final int HEIGHT_ANIMATION_DURATION = 200,
+                             FAST_SWIPE_VELOCITY_VALUE = 1500; // Above this many dp per second, a swipe may go further than one page
+
+    private final SparseIntArray pageHeights = new SparseIntArray(); // Position -> measured height
+    private int measuredForWidth = -1,     // Cached heights are only valid for this width
+                lastWidthMeasureSpec = -1, // The width spec of the last real measure
+                reportedHeight = -1,       // The height we last went with
+                pendingHeight = -1;        // While shrinking, the height we'll go with once the animation is done
+
+    private boolean fitCurrentPage,         // If true, the height of the current page is used, not the tallest one
+                    suppressInvalidations,  // If true, invalidations from the pages don't go any further than the pager
+                    invalidationSuppressed, // If true, something was held back, so the pager has to be redrawn later
+                    layoutFrozen,           // If true, layout requests are held back until the layout is unfrozen
+                    layoutDeferred,         // If true, a layout request was held back
+                    suspended,              // If true, the pages can't be seen, so they are not measured, laid out or drawn
+                    swiping;                // If true, the pager is being dragged or is settling
+    private final Rect visibleRect = new Rect();
+    private HeightAnimationHost heightAnimationHost;
+    private final PagePreparationScheduler preparationScheduler = new PagePreparationScheduler(this);
+    private final PagePrefetcher prefetcher = new PagePrefetcher(this, preparationScheduler);
+    private VelocityTracker velocityTracker;
+    private int minSwipeVelocity,  // Slower than this (in pixels per second), it's not a swipe yet
+                fastSwipeVelocity; // Faster than this, it's a fast one
+    private View animationTarget;
+
+    private final Runnable shrinkEndAction = new Runnable() {
+        @Override
+        public void run() {
+            reportedHeight = pendingHeight;
+            pendingHeight = -1;
+            if (animationTarget != null) {
+                animationTarget.setTranslationY(0);
+                animationTarget = null;
+            }
+            requestLayout();
+        }
+    };
+
+    private final DataSetObserver dataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            //Positions may have shifted
+            pageHeights.clear();
+        }
+    };
+
     public WrappingViewPager(@NonNull Context context) {
         super(context);
+        init();
     }
 
     public WrappingViewPager(@NonNull Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        minSwipeVelocity = ViewConfiguration.get(getContext()).getScaledMinimumFlingVelocity();
+        fastSwipeVelocity = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, FAST_SWIPE_VELOCITY_VALUE, getResources().getDisplayMetrics()));
+
+        addOnPageChangeListener(new SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                preparationScheduler.recordVisit(position);
+                if (fitCurrentPage) {
+                    onCurrentPageChanged(position);
+                }
+            }
+
+            @Override
+            public void onPageScrollStateChanged(int state) {
+                swiping = state != SCROLL_STATE_IDLE;
+                if (!swiping) {
+                    prefetcher.onIdle();
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        trackSwipe(ev);
+        return super.dispatchTouchEvent(ev);
+    }
+
+    /**
+     * Follows the finger, and lets the prefetcher know which way (and how fast) the pages are going, once it's fast enough
+     * to be a swipe
+     *
+     * @param ev The touch event
+     */
+    private void trackSwipe(MotionEvent ev) {
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                if (velocityTracker == null) {
+                    velocityTracker = VelocityTracker.obtain();
+                } else {
+                    velocityTracker.clear();
+                }
+                velocityTracker.addMovement(ev);
+                break;
+
+            case MotionEvent.ACTION_MOVE:
+            case MotionEvent.ACTION_UP:
+                if (velocityTracker == null) {
+                    break;
+                }
+                velocityTracker.addMovement(ev);
+                velocityTracker.computeCurrentVelocity(1000);
+                float velocity = velocityTracker.getXVelocity();
+
+                if (swiping && Math.abs(velocity) >= minSwipeVelocity) {
+                    //The finger going left brings in the next page
+                    prefetcher.onSwipe(velocity < 0 ? 1 : -1, Math.abs(velocity) >= fastSwipeVelocity);
+                }
+
+                if (ev.getActionMasked() == MotionEvent.ACTION_UP) {
+                    velocityTracker.recycle();
+                    velocityTracker = null;
+                }
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+                if (velocityTracker != null) {
+                    velocityTracker.recycle();
+                    velocityTracker = null;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Makes the pager as tall as its current page (instead of the tallest one)
+     * @param fitCurrentPage Whether to fit the current page
+     */
+    void setFitCurrentPage(boolean fitCurrentPage) {
+        if (this.fitCurrentPage != fitCurrentPage) {
+            this.fitCurrentPage = fitCurrentPage;
+            requestLayout();
+        }
+    }
+
+    /**
+     * @return The scheduler preparing this pager's pages ahead of time
+     */
+    @NonNull
+    PagePreparationScheduler getPreparationScheduler() {
+        return preparationScheduler;
+    }
+
+    /**
+     * Sets (or clears) the host, which decides when height changes are animated
+     * @param host The host, or {@code null} to never animate
+     */
+    void setHeightAnimationHost(@Nullable HeightAnimationHost host) {
+        heightAnimationHost = host;
+    }
+
+    /**
+     * Holds back (or lets through again) invalidations coming from the pages. When they're let through, the pager is redrawn
+     * if anything was held back, and the pages that changed meanwhile are drawn again
+     *
+     * @param suppress Whether to hold invalidations back
+     */
+    void setInvalidationsSuppressed(boolean suppress) {
+        suppressInvalidations = suppress;
+        if (!suppress && invalidationSuppressed) {
+            invalidationSuppressed = false;
+            invalidate();
+        }
+    }
+
+    /**
+     * Freezes (or unfreezes) the layout. While frozen, layout requests from the pages (or the pager itself) don't go up to
+     * the sheet, so it is not laid out again mid-animation. When unfrozen, everything that was held back is laid out in a
+     * single pass. A pager that has never been laid out is never held back
+     *
+     * @param frozen Whether to freeze the layout
+     */
+    void setLayoutFrozen(boolean frozen) {
+        layoutFrozen = frozen;
+        if (!frozen && layoutDeferred) {
+            layoutDeferred = false;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Suspends (or resumes) the pager. While suspended (and once it has been laid out), it keeps its last measured size,
+     * skips laying out the pages, holds back layout requests and invalidations, and doesn't draw while it's out of sight.
+     * When resumed, whatever was held back is laid out and drawn right away, even if the layout is frozen
+     *
+     * @param suspended Whether to suspend the pager
+     */
+    void setSuspended(boolean suspended) {
+        if (this.suspended == suspended) {
+            return;
+        }
+        this.suspended = suspended;
+
+        if (!suspended) {
+            if (layoutDeferred) {
+                layoutDeferred = false;
+                super.requestLayout();
+            }
+            invalidationSuppressed = false;
+            invalidate();
+        }
+    }
+
+    private boolean isSuspended() {
+        return suspended && ViewCompat.isLaidOut(this);
+    }
+
+    @Override
+    public void requestLayout() {
+        if ((layoutFrozen || suspended) && ViewCompat.isLaidOut(this)) {
+            layoutDeferred = true;
+            return;
+        }
+        super.requestLayout();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @Override
+    public void onDescendantInvalidated(@NonNull View child, @NonNull View target) {
+        if (suppressInvalidations || isSuspended()) {
+            invalidationSuppressed = true;
+            return;
+        }
+        super.onDescendantInvalidated(child, target);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        if (suppressInvalidations || isSuspended()) {
+            invalidationSuppressed = true;
+            return null;
+        }
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    @Override
+    public void setAdapter(@Nullable PagerAdapter adapter) {
+        PagerAdapter oldAdapter = getAdapter();
+        prefetcher.cancel();
+        preparationScheduler.clear();
+        if (oldAdapter != null) {
+            oldAdapter.unregisterDataSetObserver(dataSetObserver);
+        }
+        pageHeights.clear();
+        super.setAdapter(adapter);
+        if (adapter != null) {
+            adapter.registerDataSetObserver(dataSetObserver);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (isSuspended() && !changed) {
+            return;
+        }
+        super.onLayout(changed, l, t, r, b);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (isSuspended() && !getLocalVisibleRect(visibleRect)) {
+            invalidationSuppressed = true; // Whatever the pages look like now, it's drawn on resume
+            return;
+        }
+        super.dispatchDraw(canvas);
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int mode = MeasureSpec.getMode(heightMeasureSpec);
+
+        if (isSuspended() && widthMeasureSpec == lastWidthMeasureSpec) {
+            // Nobody can see the pages, so keep the last size, expanding will not have to wait for a measure
+            setMeasuredDimension(getMeasuredWidth(), mode == MeasureSpec.EXACTLY ? MeasureSpec.getSize(heightMeasureSpec) : getMeasuredHeight());
+            return;
+        }
+        lastWidthMeasureSpec = widthMeasureSpec;
+
         // Unspecified means that the ViewPager is in a ScrollView WRAP_CONTENT.
         // At Most means that the ViewPager is not in a ScrollView WRAP_CONTENT.
         if (mode == MeasureSpec.UNSPECIFIED || mode == MeasureSpec.AT_MOST) {
             // super has to be called in the beginning so the child views can be initialized.
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-            int height = 0;
-            for (int i = 0; i < getChildCount(); i++) {
-                View child = getChildAt(i);
-                child.measure(widthMeasureSpec, MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
-                int h = child.getMeasuredHeight();
-                if (h > height) height = h;
-            }
-            heightMeasureSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+            heightMeasureSpec = MeasureSpec.makeMeasureSpec(resolveHeight(measurePages(widthMeasureSpec)), MeasureSpec.EXACTLY);
         }
         // super has to be called again so the new specs are treated as exact measurements
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
+
+    /**
+     * Measures the pages that need it (new ones, and the ones that requested a layout), and works out the height we want
+     *
+     * @param widthMeasureSpec The width spec
+     * @return The current page's height, or the tallest page's, depending on the mode
+     */
+    private int measurePages(int widthMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        if (width != measuredForWidth) {
+            pageHeights.clear();
+            measuredForWidth = width;
+        }
+
+        int untaggedHeight = 0; // Pages we can't cache, measured every time
+
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (((LayoutParams) child.getLayoutParams()).isDecor) {
+                continue;
+            }
+
+            Object tag = child.getTag(R.id.controlsheet_page_position);
+            int position = tag instanceof Integer ? (Integer) tag : -1;
+
+            if (position < 0 || child.isLayoutRequested() || pageHeights.indexOfKey(position) < 0) {
+                child.measure(widthMeasureSpec, MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+                if (position >= 0) {
+                    pageHeights.put(position, child.getMeasuredHeight());
+                } else if (child.getMeasuredHeight() > untaggedHeight) {
+                    untaggedHeight = child.getMeasuredHeight();
+                }
+            }
+        }
+
+        if (fitCurrentPage) {
+            int current = pageHeights.get(getCurrentItem(), -1);
+            if (current >= 0) {
+                return current;
+            }
+        }
+
+        int height = untaggedHeight;
+        for (int i = 0; i < pageHeights.size(); i++) {
+            if (pageHeights.valueAt(i) > height) height = pageHeights.valueAt(i);
+        }
+        return height;
+    }
+
+    /**
+     * Returns the height last measured for the page in the given position
+     *
+     * @param position The page position
+     * @return Its height, or -1 if it was never measured
+     */
+    int getCachedPageHeight(int position) {
+        return pageHeights.get(position, -1);
+    }
+
+    /**
+     * When the current page changes, and we already know its height, a shrink can start right away, without any layout
+     *
+     * @param position The new current position
+     */
+    private void onCurrentPageChanged(int position) {
+        int height = pageHeights.get(position, -1);
+        if (height >= 0 && height < reportedHeight && heightAnimationHost != null && heightAnimationHost.getHeightAnimationTarget() != null) {
+            resolveHeight(height);
+        } else {
+            requestLayout();
+        }
+    }
+
+    /**
+     * <p>Decides which height to go with right now, and starts animating if the host lets us.</p>
+     *
+     * <p>Growing: the new height is used at once, and the sheet is translated down by the difference, so it looks the same
+     * after the layout, then slides back up. Shrinking: the old height is kept while the sheet slides down by the difference,
+     * and the new height is only laid out at the end.</p>
+     *
+     * @param target The height we want
+     * @return The height to go with now
+     */
+    private int resolveHeight(int target) {
+        View sheet = null;
+
+        if (pendingHeight >= 0 && target == pendingHeight) {
+            //Already on its way there
+            return reportedHeight;
+        } else if (pendingHeight >= 0) {
+            sheet = animationTarget;
+        } else if (reportedHeight >= 0 && target != reportedHeight && heightAnimationHost != null) {
+            sheet = heightAnimationHost.getHeightAnimationTarget();
+        }
+
+        if (sheet == null) {
+            reportedHeight = target;
+            return target;
+        }
+
+        sheet.animate().cancel();
+
+        if (target < reportedHeight) {
+            pendingHeight = target;
+            animationTarget = sheet;
+            sheet.animate()
+                 .translationY(reportedHeight - target)
+                 .setDuration(HEIGHT_ANIMATION_DURATION)
+                 .withEndAction(shrinkEndAction);
+            return reportedHeight;
+        }
+
+        pendingHeight = -1;
+        animationTarget = null;
+        sheet.setTranslationY(sheet.getTranslationY() + (target - reportedHeight));
+        sheet.animate()
+             .translationY(0)
+             .setDuration(HEIGHT_ANIMATION_DURATION);
+
+        reportedHeight = target;
+        return target;
+    }
 }
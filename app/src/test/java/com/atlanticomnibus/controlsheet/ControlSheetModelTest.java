@@ -0,0 +1,287 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for the sheet's plain Java bookkeeping, see {@link ControlSheetModel}
+ */
+public class ControlSheetModelTest {
+
+    private static final int ZERO_BASED = 0, // Same as ControlSheet.ZERO_BASED
+                             NATURAL    = 1; // Same as ControlSheet.NATURAL
+
+    private static ControlSheetModel modelWithPages(int limit, int numberingOffset, int... layoutIds) {
+        ControlSheetModel model = new ControlSheetModel(limit, numberingOffset);
+        for (int layoutId : layoutIds) {
+            model.appendPage(layoutId);
+        }
+        return model;
+    }
+
+
+    /************************************Positions*************************************************/
+
+
+    @Test
+    public void zeroBasedPositions_areIndices() {
+        ControlSheetModel model = modelWithPages(5, ZERO_BASED, 10, 20);
+
+        assertEquals(0, model.toIndex(0));
+        assertEquals(0, model.toPosition(0));
+        assertTrue(model.isPagePosition(0));
+        assertTrue(model.isPagePosition(1));
+        assertFalse(model.isPagePosition(2));
+        assertFalse(model.isPagePosition(-1));
+    }
+
+    @Test
+    public void naturalPositions_startFromOne() {
+        ControlSheetModel model = modelWithPages(5, NATURAL, 10, 20);
+
+        assertEquals(0, model.toIndex(1));
+        assertEquals(1, model.toPosition(0));
+        assertFalse(model.isPagePosition(0));
+        assertTrue(model.isPagePosition(1));
+        assertTrue(model.isPagePosition(2));
+        assertFalse(model.isPagePosition(3));
+    }
+
+    @Test
+    public void numberingMode_canChangeLater() {
+        ControlSheetModel model = modelWithPages(5, ZERO_BASED, 10, 20);
+        model.setNumberingOffset(NATURAL);
+
+        assertEquals(NATURAL, model.getNumberingOffset());
+        assertTrue(model.removePage(2));
+        assertArrayEquals(new int[]{10}, model.getLayoutIds());
+    }
+
+
+    /************************************Pages*****************************************************/
+
+
+    @Test
+    public void addPage_appendsAndInserts() {
+        ControlSheetModel model = modelWithPages(5, ZERO_BASED, 10, 30);
+
+        assertTrue(model.addPage(40, ControlSheetModel.APPEND));
+        assertTrue(model.addPage(20, 1));
+        assertTrue(model.addPage(0, 0));
+        assertArrayEquals(new int[]{0, 10, 20, 30, 40}, model.getLayoutIds());
+    }
+
+    @Test
+    public void addPage_rightAfterTheLastPage_appends() {
+        ControlSheetModel model = modelWithPages(5, NATURAL, 10, 20);
+
+        assertTrue(model.addPage(30, 3));
+        assertArrayEquals(new int[]{10, 20, 30}, model.getLayoutIds());
+    }
+
+    @Test
+    public void addPage_rejectsInvalidPositions() {
+        ControlSheetModel model = modelWithPages(5, NATURAL, 10, 20);
+
+        assertFalse(model.addPage(30, 0));
+        assertFalse(model.addPage(30, 4));
+        assertFalse(model.addPage(30, -5));
+        assertArrayEquals(new int[]{10, 20}, model.getLayoutIds());
+    }
+
+    @Test
+    public void addPage_rejectsPagesOverTheLimit() {
+        ControlSheetModel model = modelWithPages(2, ZERO_BASED, 10, 20);
+
+        assertFalse(model.addPage(30, ControlSheetModel.APPEND));
+        assertFalse(model.addPage(30, 0));
+        assertEquals(2, model.getPageCount());
+    }
+
+    @Test
+    public void removePage_firstMiddleAndLast() {
+        ControlSheetModel model = modelWithPages(5, ZERO_BASED, 10, 20, 30, 40);
+
+        assertTrue(model.removePage(0));
+        assertTrue(model.removePage(1));
+        assertTrue(model.removePage(1));
+        assertArrayEquals(new int[]{20}, model.getLayoutIds());
+        assertTrue(model.removePage(0));
+        assertEquals(0, model.getPageCount());
+    }
+
+    @Test
+    public void removePage_rejectsInvalidPositions() {
+        ControlSheetModel model = modelWithPages(5, NATURAL, 10, 20);
+
+        assertFalse(model.removePage(0));
+        assertFalse(model.removePage(3));
+        assertFalse(model.removePage(-1));
+        assertEquals(2, model.getPageCount());
+
+        model.clearPages();
+        assertFalse(model.removePage(1));
+    }
+
+    @Test
+    public void removedPage_canBeAddedAgain() {
+        ControlSheetModel model = modelWithPages(2, ZERO_BASED, 10, 20);
+
+        assertTrue(model.removePage(0));
+        assertTrue(model.addPage(30, ControlSheetModel.APPEND));
+        assertArrayEquals(new int[]{20, 30}, model.getLayoutIds());
+    }
+
+    @Test
+    public void trimPagesToLimit_dropsTheLastPages() {
+        ControlSheetModel model = modelWithPages(2, ZERO_BASED, 10, 20, 30, 40);
+
+        assertTrue(model.trimPagesToLimit());
+        assertArrayEquals(new int[]{10, 20}, model.getLayoutIds());
+        assertFalse(model.trimPagesToLimit());
+    }
+
+    @Test
+    public void trimPagesToLimit_keepsPagesWithinTheLimit() {
+        ControlSheetModel model = modelWithPages(3, ZERO_BASED, 10, 20, 30);
+
+        assertFalse(model.trimPagesToLimit());
+        assertEquals(3, model.getPageCount());
+    }
+
+    @Test
+    public void trimPagesToLimit_toALowerLimit() {
+        ControlSheetModel model = modelWithPages(5, ZERO_BASED, 10, 20, 30);
+        model.setPageLimit(1);
+
+        assertTrue(model.trimPagesToLimit());
+        assertArrayEquals(new int[]{10}, model.getLayoutIds());
+
+        model.setPageLimit(-1);
+        assertTrue(model.trimPagesToLimit());
+        assertEquals(0, model.getPageCount());
+    }
+
+    @Test
+    public void indexOfLayout_findsTheFirstPage() {
+        ControlSheetModel model = modelWithPages(5, NATURAL, 10, 20, 10);
+
+        assertEquals(0, model.indexOfLayout(10));
+        assertEquals(1, model.indexOfLayout(20));
+        assertEquals(-1, model.indexOfLayout(30));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getLayoutId_outsideThePages_throws() {
+        modelWithPages(5, ZERO_BASED, 10).getLayoutId(1);
+    }
+
+
+    /************************************Strip buttons*********************************************/
+
+
+    @Test
+    public void stripButtons_chainOnlyFromTwoButtons() {
+        ControlSheetModel model = new ControlSheetModel(5, ZERO_BASED);
+        model.addStripButton(100);
+        assertFalse(model.needsButtonChain());
+
+        model.addStripButton(200);
+        assertTrue(model.needsButtonChain());
+        assertArrayEquals(new int[]{100, 200, 999}, model.buildChainIds(999));
+    }
+
+    @Test
+    public void removeStripButton_returnsItsId() {
+        ControlSheetModel model = new ControlSheetModel(5, NATURAL);
+        model.addStripButton(100);
+        model.addStripButton(200);
+        model.addStripButton(300);
+
+        assertEquals(200, model.removeStripButton(2));
+        assertEquals(ControlSheetModel.NO_ID, model.removeStripButton(0));
+        assertEquals(ControlSheetModel.NO_ID, model.removeStripButton(3));
+        assertEquals(300, model.getStripButtonId(2));
+        assertEquals(1, model.indexOfStripButton(300));
+    }
+
+
+    /************************************Sheet state***********************************************/
+
+
+    @Test
+    public void settling_flipsTheButton() {
+        ControlSheetModel model = new ControlSheetModel(5, ZERO_BASED);
+
+        assertEquals(ControlSheetModel.BUTTON_OPEN, model.onSheetStateChanged(ControlSheetModel.STATE_SETTLING));
+        assertEquals(ControlSheetModel.BUTTON_UNCHANGED, model.onSheetStateChanged(ControlSheetModel.STATE_EXPANDED));
+        assertEquals(ControlSheetModel.BUTTON_CLOSE, model.onSheetStateChanged(ControlSheetModel.STATE_SETTLING));
+        assertEquals(ControlSheetModel.BUTTON_UNCHANGED, model.onSheetStateChanged(ControlSheetModel.STATE_COLLAPSED));
+        assertFalse(model.isControlButtonOpen());
+    }
+
+    @Test
+    public void draggedAllTheWay_fixesTheButtonUp() {
+        ControlSheetModel model = new ControlSheetModel(5, ZERO_BASED);
+
+        assertEquals(ControlSheetModel.BUTTON_UNCHANGED, model.onSheetStateChanged(ControlSheetModel.STATE_DRAGGING));
+        assertEquals(ControlSheetModel.BUTTON_OPEN, model.onSheetStateChanged(ControlSheetModel.STATE_EXPANDED));
+        assertTrue(model.isControlButtonOpen());
+
+        assertEquals(ControlSheetModel.BUTTON_UNCHANGED, model.onSheetStateChanged(ControlSheetModel.STATE_DRAGGING));
+        assertEquals(ControlSheetModel.BUTTON_CLOSE, model.onSheetStateChanged(ControlSheetModel.STATE_COLLAPSED));
+        assertFalse(model.isControlButtonOpen());
+    }
+
+    @Test
+    public void otherStates_leaveTheButtonAlone() {
+        ControlSheetModel model = new ControlSheetModel(5, ZERO_BASED);
+
+        assertEquals(ControlSheetModel.BUTTON_UNCHANGED, model.onSheetStateChanged(ControlSheetModel.STATE_HALF_EXPANDED));
+        assertEquals(ControlSheetModel.BUTTON_UNCHANGED, model.onSheetStateChanged(ControlSheetModel.STATE_HIDDEN));
+        assertFalse(model.isControlButtonOpen());
+    }
+
+    @Test
+    public void resetControlButton_closesItQuietly() {
+        ControlSheetModel model = new ControlSheetModel(5, ZERO_BASED);
+        model.onSheetStateChanged(ControlSheetModel.STATE_EXPANDED);
+        model.resetControlButton();
+
+        assertFalse(model.isControlButtonOpen());
+        assertEquals(ControlSheetModel.BUTTON_OPEN, model.onSheetStateChanged(ControlSheetModel.STATE_EXPANDED));
+    }
+
+    @Test
+    public void movingAndShowingPages() {
+        assertTrue(ControlSheetModel.isMoving(ControlSheetModel.STATE_DRAGGING));
+        assertTrue(ControlSheetModel.isMoving(ControlSheetModel.STATE_SETTLING));
+        assertFalse(ControlSheetModel.isMoving(ControlSheetModel.STATE_EXPANDED));
+
+        assertFalse(ControlSheetModel.showsPages(ControlSheetModel.STATE_COLLAPSED));
+        assertTrue(ControlSheetModel.showsPages(ControlSheetModel.STATE_DRAGGING));
+        assertTrue(ControlSheetModel.showsPages(ControlSheetModel.STATE_HALF_EXPANDED));
+    }
+}
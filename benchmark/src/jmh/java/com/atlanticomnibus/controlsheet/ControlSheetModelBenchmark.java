@@ -0,0 +1,128 @@
+/*
+ * ControlSheet
+ *
+ * Copyright (c) 2019 Attila Orosz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.atlanticomnibus.controlsheet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Benchmarks (and stress-tests) the {@link ControlSheetModel}: the page list, the strip buttons, and the sheet state
+ * logic, with thousands of operations per invocation, far more than any real sheet would ever see.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControlSheetModelBenchmark {
+
+    private static final int OPERATIONS = 4096;
+
+    private static final int[] STATES = {
+            ControlSheetModel.STATE_DRAGGING, ControlSheetModel.STATE_SETTLING, ControlSheetModel.STATE_EXPANDED,
+            ControlSheetModel.STATE_DRAGGING, ControlSheetModel.STATE_SETTLING, ControlSheetModel.STATE_COLLAPSED
+    };
+
+    @Param({"5", "64", "1024"})
+    public int pages;
+
+    private ControlSheetModel model;
+    private int[] positions;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        model = new ControlSheetModel(pages, 0);
+        for (int i = 0; i < pages; i++) {
+            model.appendPage(i + 1);
+        }
+
+        Random random = new Random(42);
+        positions = new int[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            positions[i] = random.nextInt(pages);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void removeAndAddPages(Blackhole blackhole) {
+        for (int position : positions) {
+            model.removePage(position);
+            blackhole.consume(model.addPage(position + 1, Math.min(position, model.getPageCount())));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void lookUpPages(Blackhole blackhole) {
+        for (int position : positions) {
+            if (model.isPagePosition(position)) {
+                blackhole.consume(model.getLayoutId(model.toIndex(position)));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void appendAndTrimPages(Blackhole blackhole) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            model.appendPage(i);
+            if (model.trimPagesToLimit()) {
+                blackhole.consume(model.getPageCount());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void churnStripButtons(Blackhole blackhole) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            model.addStripButton(i + 1);
+            if (model.getStripButtonCount() > 8) {
+                blackhole.consume(model.removeStripButton(positions[i] % model.getStripButtonCount()));
+            }
+            if (model.needsButtonChain()) {
+                blackhole.consume(model.buildChainIds(-1));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public void sheetStateChanges(Blackhole blackhole) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            int state = STATES[i % STATES.length];
+            blackhole.consume(model.onSheetStateChanged(state));
+            blackhole.consume(ControlSheetModel.isMoving(state) || ControlSheetModel.showsPages(state));
+        }
+    }
+}